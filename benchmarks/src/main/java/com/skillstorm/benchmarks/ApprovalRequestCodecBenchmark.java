@@ -0,0 +1,80 @@
+package com.skillstorm.benchmarks;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.skillstorm.codecs.ApprovalRequestCodecs;
+import com.skillstorm.codecs.PayloadCodec;
+import com.skillstorm.configs.JacksonConfig;
+import com.skillstorm.dtos.ApprovalRequestDto;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// Compares the JSON and binary encodings of ApprovalRequestDto, along with the String based JSON path the service used
+// before the codecs. The encoded sizes are printed when each trial starts.
+//
+//   java -jar target/benchmarks.jar ApprovalRequestCodecBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class ApprovalRequestCodecBenchmark {
+
+    private ObjectMapper mapper;
+    private PayloadCodec<ApprovalRequestDto> json;
+    private PayloadCodec<ApprovalRequestDto> binary;
+
+    private ApprovalRequestDto approvalRequest;
+    private String jsonString;
+    private byte[] jsonBytes;
+    private byte[] binaryBytes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        mapper = new JacksonConfig().objectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        ApprovalRequestCodecs codecs = new ApprovalRequestCodecs(mapper);
+        json = codecs.json();
+        binary = codecs.binary();
+
+        approvalRequest = BenchmarkData.approvalRequest();
+
+        jsonBytes = json.encode(approvalRequest);
+        jsonString = new String(jsonBytes, StandardCharsets.UTF_8);
+        binaryBytes = binary.encode(approvalRequest);
+        System.out.printf("%nEncoded sizes: json=%d bytes, binary=%d bytes%n", jsonBytes.length, binaryBytes.length);
+    }
+
+    @Benchmark
+    public String encodeJsonString() throws Exception {
+        return mapper.writeValueAsString(approvalRequest);
+    }
+
+    @Benchmark
+    public ApprovalRequestDto decodeJsonString() throws Exception {
+        return mapper.readValue(jsonString, ApprovalRequestDto.class);
+    }
+
+    @Benchmark
+    public byte[] encodeJson() {
+        return json.encode(approvalRequest);
+    }
+
+    @Benchmark
+    public ApprovalRequestDto decodeJson() {
+        return json.decode(ByteBuffer.wrap(jsonBytes));
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() {
+        return binary.encode(approvalRequest);
+    }
+
+    @Benchmark
+    public ApprovalRequestDto decodeBinary() {
+        return binary.decode(ByteBuffer.wrap(binaryBytes));
+    }
+}
@@ -0,0 +1,79 @@
+package com.skillstorm.benchmarks;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.skillstorm.configs.JacksonConfig;
+import com.skillstorm.dtos.ApprovalRequestDto;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// JSON (de)serialization of ApprovalRequestDto through the mapper from JacksonConfig: single requests as they go over
+// Rabbit and into SSE events, whole inboxes as /approval-requests returns them, and the array records read off Kinesis.
+// Reads ignore unknown properties, as the service's codecs do, since the DTO writes out the derived urgent property.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class ApprovalRequestJsonBenchmark {
+
+    @Param({"50"})
+    private int inboxSize;
+
+    private ObjectMapper mapper;
+    private ObjectReader reader;
+    private ObjectReader inboxReader;
+
+    private ApprovalRequestDto approvalRequest;
+    private List<ApprovalRequestDto> inbox;
+    private byte[] approvalRequestJson;
+    private byte[] inboxJson;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        mapper = new JacksonConfig().objectMapper();
+        reader = mapper.readerFor(ApprovalRequestDto.class).without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        inboxReader = mapper.readerFor(new TypeReference<List<ApprovalRequestDto>>() { })
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+        approvalRequest = BenchmarkData.approvalRequest();
+        inbox = BenchmarkData.inbox("jane.doe@example.com", inboxSize);
+        approvalRequestJson = mapper.writeValueAsBytes(approvalRequest);
+        inboxJson = mapper.writeValueAsBytes(inbox);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        return mapper.writeValueAsBytes(approvalRequest);
+    }
+
+    @Benchmark
+    public ApprovalRequestDto deserialize() throws Exception {
+        return reader.readValue(approvalRequestJson);
+    }
+
+    @Benchmark
+    public byte[] serializeInbox() throws Exception {
+        return mapper.writeValueAsBytes(inbox);
+    }
+
+    @Benchmark
+    public List<ApprovalRequestDto> deserializeInbox() throws Exception {
+        return inboxReader.readValue(inboxJson);
+    }
+
+    // The way KinesisService reads an aggregated JSON record: parse the tree, then bind each element:
+    @Benchmark
+    public void deserializeInboxAsTree(Blackhole blackhole) throws Exception {
+        for(JsonNode element : mapper.readTree(inboxJson)) {
+            blackhole.consume(reader.<ApprovalRequestDto>readValue(element));
+        }
+    }
+}
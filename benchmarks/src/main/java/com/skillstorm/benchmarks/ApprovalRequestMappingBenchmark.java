@@ -0,0 +1,42 @@
+package com.skillstorm.benchmarks;
+
+import com.skillstorm.dtos.ApprovalRequestDto;
+import com.skillstorm.entities.ApprovalRequest;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Mapping between ApprovalRequestDto and the ApprovalRequest entity, done for every message written to or read from
+// Cassandra, and the urgency check that runs whenever a DTO is serialized.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class ApprovalRequestMappingBenchmark {
+
+    private ApprovalRequestDto approvalRequestDto;
+    private ApprovalRequest approvalRequest;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        approvalRequestDto = BenchmarkData.approvalRequest();
+        approvalRequest = approvalRequestDto.mapToEntity();
+    }
+
+    @Benchmark
+    public ApprovalRequest dtoToEntity() {
+        return approvalRequestDto.mapToEntity();
+    }
+
+    @Benchmark
+    public ApprovalRequestDto entityToDto() {
+        return new ApprovalRequestDto(approvalRequest);
+    }
+
+    @Benchmark
+    public boolean isUrgent() {
+        return approvalRequestDto.isUrgent();
+    }
+}
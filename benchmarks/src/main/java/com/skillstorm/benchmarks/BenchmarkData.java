@@ -0,0 +1,47 @@
+package com.skillstorm.benchmarks;
+
+import com.skillstorm.dtos.ApprovalRequestDto;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+// Test data shared by the benchmarks. Everything is generated from a fixed seed and fixed dates, so every run works on
+// exactly the same inputs and results can be compared from one run to the next.
+final class BenchmarkData {
+
+    static final long SEED = 42;
+    static final LocalDateTime NOW = LocalDateTime.of(2026, 10, 18, 9, 30, 15, 123_000_000);
+
+    private BenchmarkData() {
+    }
+
+    static ApprovalRequestDto approvalRequest(Random random, String username) {
+        ApprovalRequestDto approvalRequest = new ApprovalRequestDto();
+        approvalRequest.setUsername(username);
+        approvalRequest.setFormId(new UUID(random.nextLong(), random.nextLong()));
+        approvalRequest.setRequester("requester" + random.nextInt(1000) + "@example.com");
+        approvalRequest.setEventDate(LocalDate.of(2026, 10, 18).plusDays(random.nextInt(60)).toString());
+        approvalRequest.setTimeCreated(NOW.minusMinutes(random.nextInt(10_000)));
+        approvalRequest.setApprovalDeadline(approvalRequest.getTimeCreated().plusDays(3));
+        approvalRequest.setViewed(random.nextBoolean());
+        return approvalRequest;
+    }
+
+    static ApprovalRequestDto approvalRequest() {
+        return approvalRequest(new Random(SEED), "jane.doe@example.com");
+    }
+
+    // A user's inbox of the given size:
+    static List<ApprovalRequestDto> inbox(String username, int size) {
+        Random random = new Random(SEED);
+        List<ApprovalRequestDto> inbox = new ArrayList<>(size);
+        for(int i = 0; i < size; i++) {
+            inbox.add(approvalRequest(random, username));
+        }
+        return inbox;
+    }
+}
@@ -0,0 +1,87 @@
+package com.skillstorm.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.skillstorm.codecs.ApprovalRequestCodecs;
+import com.skillstorm.configs.CacheConfig;
+import com.skillstorm.configs.JacksonConfig;
+import com.skillstorm.dtos.ApprovalRequestDto;
+import com.skillstorm.dtos.InboxItemDto;
+import com.skillstorm.utils.EventBus;
+import com.skillstorm.utils.ReplayBuffer;
+import com.skillstorm.utils.SubscriberRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.amqp.core.AnonymousQueue;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import reactor.core.publisher.BaseSubscriber;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Delivering one update routed here from another instance to every open connection of its user, for growing numbers of
+// connections. The update is framed once per stream, so the cost per extra connection should be just queueing and
+// emitting it. Connections are opened on the replay buffers directly, since opening them through EventBus would declare
+// their bindings on a broker.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class EventBusFanOutBenchmark {
+
+    private static final String USERNAME = "jane.doe@example.com";
+
+    @Param({"1", "16", "256", "1024"})
+    private int subscribers;
+
+    private EventBus eventBus;
+    private InboxItemDto update;
+    private final List<CountingSubscriber> connections = new ArrayList<>();
+
+    // Stands in for an SSE connection that keeps up with everything it's sent:
+    private static final class CountingSubscriber extends BaseSubscriber<ReplayBuffer.Event<ApprovalRequestDto>> {
+
+        private long received;
+
+        @Override
+        protected void hookOnNext(ReplayBuffer.Event<ApprovalRequestDto> event) {
+            received += event.frame().size();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ObjectMapper mapper = new JacksonConfig().objectMapper();
+        CacheConfig cacheConfig = new CacheConfig();
+        ReplayBuffer<ApprovalRequestDto> approvalRequestUpdates = cacheConfig.approvalRequestUpdates(new ApprovalRequestCodecs(mapper),
+                64, 65536, 67108864, 30, SubscriberRegistry.DEFAULT_QUEUE_CAPACITY, SubscriberRegistry.OverflowPolicy.COALESCE);
+        ReplayBuffer<InboxItemDto> inboxItemUpdates = cacheConfig.inboxItemUpdates(mapper,
+                64, 65536, 67108864, 30, SubscriberRegistry.DEFAULT_QUEUE_CAPACITY, SubscriberRegistry.OverflowPolicy.COALESCE);
+
+        // Never connects, since nothing here is sent or bound:
+        CachingConnectionFactory connectionFactory = new CachingConnectionFactory();
+        eventBus = new EventBus(connectionFactory, new Jackson2JsonMessageConverter(), new RabbitAdmin(connectionFactory),
+                new AnonymousQueue(), approvalRequestUpdates, inboxItemUpdates, "direct-exchange", 60);
+
+        update = new InboxItemDto(BenchmarkData.approvalRequest());
+
+        for(int i = 0; i < subscribers; i++) {
+            CountingSubscriber connection = new CountingSubscriber();
+            approvalRequestUpdates.stream(USERNAME, null).subscribe(connection);
+            connections.add(connection);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        connections.forEach(BaseSubscriber::dispose);
+    }
+
+    @Benchmark
+    public void fanOut() {
+        eventBus.onMessage(update, "user." + USERNAME, "another-instance");
+    }
+}
@@ -0,0 +1,87 @@
+package com.skillstorm.benchmarks;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.skillstorm.configs.CacheConfig;
+import com.skillstorm.dtos.ApprovalRequestDto;
+import com.skillstorm.services.ApprovalRequestLoader;
+import com.skillstorm.services.InboxCache;
+import com.skillstorm.utils.UuidOrder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+// Lookups in the Caffeine caches behind InboxCache, built by CacheConfig with the default settings and with statistics
+// recorded as they are in the service. Every user's inbox is cached up front so these are all hits; there's no database
+// behind the caches to load from.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class InboxCacheBenchmark {
+
+    // Sized so every message fits in the message cache, which holds up to 1000:
+    private static final int USERS = 16;
+    private static final int INBOX_SIZE = 50;
+
+    private InboxCache inboxCache;
+    private String[] usernames;
+    private UUID[][] formIds;
+
+    // Which user and message the next lookup is for. Walks through them in a fixed pseudo-random order:
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private final Random random = new Random(BenchmarkData.SEED);
+
+        int next(int bound) {
+            return random.nextInt(bound);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        CacheConfig cacheConfig = new CacheConfig();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        AsyncCache<String, Map<UUID, ApprovalRequestDto>> inboxes = cacheConfig.inboxesCache(meterRegistry, 10_000, 5);
+        inboxCache = new InboxCache(inboxes, cacheConfig.approvalRequestsCache(new ApprovalRequestLoader(null, null), meterRegistry),
+                null, null, null, null);
+
+        usernames = new String[USERS];
+        formIds = new UUID[USERS][INBOX_SIZE];
+        for(int user = 0; user < USERS; user++) {
+            usernames[user] = "user" + user + "@example.com";
+            List<ApprovalRequestDto> inbox = BenchmarkData.inbox(usernames[user], INBOX_SIZE);
+            Map<UUID, ApprovalRequestDto> cachedInbox = new ConcurrentSkipListMap<>(UuidOrder.CASSANDRA);
+            for(int i = 0; i < INBOX_SIZE; i++) {
+                formIds[user][i] = inbox.get(i).getFormId();
+                cachedInbox.put(formIds[user][i], inbox.get(i));
+            }
+
+            // Cache the user's inbox as a load would, then each message as a write would:
+            inboxes.put(usernames[user], CompletableFuture.completedFuture(cachedInbox));
+            inbox.forEach(inboxCache::put);
+        }
+    }
+
+    @Benchmark
+    public void getInbox(Cursor cursor, Blackhole blackhole) {
+        inboxCache.getInbox(usernames[cursor.next(USERS)])
+                .subscribe(blackhole::consume);
+    }
+
+    @Benchmark
+    public ApprovalRequestDto getMessage(Cursor cursor) {
+        int user = cursor.next(USERS);
+        return inboxCache.getMessage(usernames[user], formIds[user][cursor.next(INBOX_SIZE)]).block();
+    }
+}
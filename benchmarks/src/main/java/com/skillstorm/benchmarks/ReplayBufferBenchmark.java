@@ -0,0 +1,77 @@
+package com.skillstorm.benchmarks;
+
+import com.skillstorm.codecs.ApprovalRequestCodecs;
+import com.skillstorm.configs.CacheConfig;
+import com.skillstorm.configs.JacksonConfig;
+import com.skillstorm.dtos.ApprovalRequestDto;
+import com.skillstorm.utils.ReplayBuffer;
+import com.skillstorm.utils.SubscriberRegistry;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.publisher.BaseSubscriber;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// The replay buffer behind /messages/pending, built by CacheConfig with the default settings. append is the enqueue path
+// taken for every new approval request, including pushing it to the user's open connections. replay is the drain path
+// taken when a client reconnects and catches up on a full ring.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class ReplayBufferBenchmark {
+
+    private static final String USERNAME = "jane.doe@example.com";
+    private static final String RECONNECTING_USERNAME = "john.smith@example.com";
+    private static final int RING_SIZE = 64;
+
+    // Open connections for the user being appended to:
+    @Param({"0", "1", "16"})
+    private int subscribers;
+
+    private ReplayBuffer<ApprovalRequestDto> replayBuffer;
+    private ApprovalRequestDto approvalRequest;
+    private long firstReplayableId;
+    private final List<BaseSubscriber<ReplayBuffer.Event<ApprovalRequestDto>>> connections = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ApprovalRequestCodecs codecs = new ApprovalRequestCodecs(new JacksonConfig().objectMapper());
+        replayBuffer = new CacheConfig().approvalRequestUpdates(codecs, RING_SIZE, 65536, 67108864, 30,
+                SubscriberRegistry.DEFAULT_QUEUE_CAPACITY, SubscriberRegistry.OverflowPolicy.COALESCE);
+
+        // Fill a ring for the replay benchmark. Nothing else is appended for this user, so it stays as it is:
+        List<ApprovalRequestDto> inbox = BenchmarkData.inbox(RECONNECTING_USERNAME, RING_SIZE);
+        firstReplayableId = replayBuffer.append(RECONNECTING_USERNAME, inbox.get(0)).id();
+        inbox.subList(1, inbox.size()).forEach(approvalRequest -> replayBuffer.append(RECONNECTING_USERNAME, approvalRequest));
+        approvalRequest = BenchmarkData.approvalRequest();
+
+        for(int i = 0; i < subscribers; i++) {
+            BaseSubscriber<ReplayBuffer.Event<ApprovalRequestDto>> connection = new BaseSubscriber<>() { };
+            replayBuffer.stream(USERNAME, null).subscribe(connection);
+            connections.add(connection);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        connections.forEach(BaseSubscriber::dispose);
+    }
+
+    @Benchmark
+    public ReplayBuffer.Event<ApprovalRequestDto> append() {
+        return replayBuffer.append(USERNAME, approvalRequest);
+    }
+
+    // Reconnect having missed the whole ring:
+    @Benchmark
+    public List<ReplayBuffer.Event<ApprovalRequestDto>> replay() {
+        return replayBuffer.stream(RECONNECTING_USERNAME, firstReplayableId - 1)
+                .take(RING_SIZE)
+                .collectList()
+                .block();
+    }
+}
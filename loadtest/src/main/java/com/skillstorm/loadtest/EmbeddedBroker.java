@@ -0,0 +1,40 @@
+package com.skillstorm.loadtest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.qpid.server.SystemLauncher;
+
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+// An AMQP 0-9-1 broker running inside the load test's own JVM, with nothing written to disk. Qpid Broker-J speaks the same
+// protocol as RabbitMQ, including publisher confirms and returns, so the service connects to it as it would to RabbitMQ.
+// It listens on localhost only, with the guest/guest login the service uses.
+@Slf4j
+public class EmbeddedBroker implements AutoCloseable {
+
+    private final SystemLauncher launcher = new SystemLauncher();
+
+    public EmbeddedBroker(int port) {
+        try {
+            Map<String, Object> context = new HashMap<>();
+            context.put("qpid.amqp_port", port);
+            context.put("qpid.work_dir", Files.createTempDirectory("loadtest-broker").toString());
+
+            Map<String, Object> attributes = new HashMap<>();
+            attributes.put("type", "Memory");
+            attributes.put("initialConfigurationLocation", EmbeddedBroker.class.getResource("/qpid-config.json").toExternalForm());
+            attributes.put("startupLoggedToSystemOut", false);
+            attributes.put("context", context);
+            launcher.startup(attributes);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to start the embedded AMQP broker on port " + port, e);
+        }
+        log.info("Embedded AMQP broker listening on localhost:{}", port);
+    }
+
+    @Override
+    public void close() {
+        launcher.shutdown();
+    }
+}
@@ -0,0 +1,283 @@
+package com.skillstorm.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.skillstorm.constants.Queues;
+import com.skillstorm.dtos.ApprovalRequestDto;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.env.Environment;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Drives the service the way production traffic would. Every user holds SSE connections open on each of the pending
+// endpoints while producer threads send approval requests for random users to approval-request-queue, as Form-Service
+// does, at a fixed overall rate. Each request's send time is noted by form id, and every event a connection receives is
+// matched back to it, giving the delivery latency from the queue to the client. Requests sent during the warmup aren't
+// measured. Expired requests are auto-approved by the service as usual; those are drained from the broker and counted.
+@Slf4j
+@Component
+public class LoadDriver {
+
+    private static final long SEED = 42;
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> SSE = new ParameterizedTypeReference<>() { };
+
+    private final ObjectMapper mapper;
+    private final Environment environment;
+    private final String exchange;
+
+    private final int users;
+    private final int connectionsPerUser;
+    private final List<String> endpoints;
+    private final int producers;
+    private final int rate;
+    private final Duration warmup;
+    private final Duration duration;
+    private final Duration drain;
+    private final Duration connectTimeout;
+
+    // Send times of the measured requests, by form id:
+    private final Map<UUID, Long> sentAt = new ConcurrentHashMap<>();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder measuredSent = new LongAdder();
+    private final LongAdder sendFailures = new LongAdder();
+    private final LongAdder autoApprovals = new LongAdder();
+
+    @Autowired
+    public LoadDriver(ObjectMapper mapper, Environment environment, @Value("${exchanges.direct}") String exchange,
+                      @Value("${loadtest.users:1000}") int users,
+                      @Value("${loadtest.connections-per-user:1}") int connectionsPerUser,
+                      @Value("${loadtest.endpoints:/messages/pending,/kinesis/pending}") List<String> endpoints,
+                      @Value("${loadtest.producers:8}") int producers,
+                      @Value("${loadtest.rate:2000}") int rate,
+                      @Value("${loadtest.warmup-seconds:15}") long warmupSeconds,
+                      @Value("${loadtest.duration-seconds:60}") long durationSeconds,
+                      @Value("${loadtest.drain-seconds:10}") long drainSeconds,
+                      @Value("${loadtest.connect-timeout-seconds:60}") long connectTimeoutSeconds) {
+        this.mapper = mapper;
+        this.environment = environment;
+        this.exchange = exchange;
+        this.users = users;
+        this.connectionsPerUser = connectionsPerUser;
+        this.endpoints = endpoints;
+        this.producers = producers;
+        this.rate = rate;
+        this.warmup = Duration.ofSeconds(warmupSeconds);
+        this.duration = Duration.ofSeconds(durationSeconds);
+        this.drain = Duration.ofSeconds(drainSeconds);
+        this.connectTimeout = Duration.ofSeconds(connectTimeoutSeconds);
+    }
+
+    // What one endpoint's connections received:
+    private final class EndpointStats {
+
+        private final String endpoint;
+        private final Histogram latency = new ConcurrentHistogram(3);
+        private final LongAdder delivered = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+
+        private EndpointStats(String endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        private void onEvent(ServerSentEvent<String> event) {
+            long receivedAt = System.nanoTime();
+            UUID formId = event.data() == null ? null : formIdOf(event.data());
+            // Anything sent during the warmup isn't counted:
+            Long sendTime = formId == null ? null : sentAt.get(formId);
+            if(sendTime == null) {
+                return;
+            }
+            delivered.increment();
+            latency.recordValue(receivedAt - sendTime);
+        }
+    }
+
+    public void run() throws InterruptedException {
+        int port = environment.getRequiredProperty("local.server.port", Integer.class);
+        List<EndpointStats> stats = endpoints.stream()
+                .map(EndpointStats::new)
+                .toList();
+
+        // Every SSE client gets a connection of its own rather than sharing a pool. The service only sends the response
+        // headers along with the first event, so a connection counts as open once its request has gone out:
+        int total = users * connectionsPerUser * stats.size();
+        CountDownLatch connected = new CountDownLatch(total);
+        WebClient webClient = WebClient.builder()
+                .baseUrl("http://localhost:" + port)
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(ConnectionProvider.newConnection())
+                        .doAfterRequest((request, connection) -> connected.countDown())))
+                .build();
+
+        CachingConnectionFactory connectionFactory = new CachingConnectionFactory("localhost", LoadTest.AMQP_PORT);
+        RabbitTemplate rabbitTemplate = new RabbitTemplate(connectionFactory);
+        rabbitTemplate.setMessageConverter(new Jackson2JsonMessageConverter());
+
+        // Stand in for Form-Service receiving the auto-approvals:
+        SimpleMessageListenerContainer autoApprovalConsumer = new SimpleMessageListenerContainer(connectionFactory);
+        autoApprovalConsumer.setQueueNames(Queues.AUTO_APPROVAL.toString());
+        autoApprovalConsumer.setMessageListener(message -> autoApprovals.increment());
+        autoApprovalConsumer.start();
+
+        log.info("Opening {} SSE connections", total);
+        List<Disposable> connections = connect(webClient, stats);
+        if(!connected.await(connectTimeout.toSeconds(), TimeUnit.SECONDS)) {
+            log.warn("Only {} of {} SSE connections opened within {}s, carrying on with those", total - connected.getCount(),
+                    total, connectTimeout.toSeconds());
+        }
+
+        log.info("Sending {} approval requests per second from {} producers: {}s warmup, then {}s measured",
+                rate, producers, warmup.toSeconds(), duration.toSeconds());
+        long start = System.nanoTime();
+        long measureFrom = start + warmup.toNanos();
+        long stopAt = measureFrom + duration.toNanos();
+        long interval = TimeUnit.SECONDS.toNanos(1) * producers / rate;
+
+        ExecutorService producerThreads = Executors.newFixedThreadPool(producers);
+        for(int producer = 0; producer < producers; producer++) {
+            // Stagger the producers so their sends interleave rather than arriving together:
+            long firstSend = start + interval * producer / producers;
+            int seed = producer;
+            producerThreads.execute(() -> produce(rabbitTemplate, new Random(SEED + seed), firstSend, interval, measureFrom, stopAt));
+        }
+        producerThreads.shutdown();
+        producerThreads.awaitTermination(warmup.plus(duration).toSeconds() + 60, TimeUnit.SECONDS);
+        long measuredNanos = Math.min(System.nanoTime(), stopAt) - measureFrom;
+
+        log.info("Waiting {}s for deliveries still in flight", drain.toSeconds());
+        Thread.sleep(drain.toMillis());
+
+        connections.forEach(Disposable::dispose);
+        autoApprovalConsumer.stop();
+        connectionFactory.destroy();
+
+        report(stats, measuredNanos);
+    }
+
+    private List<Disposable> connect(WebClient webClient, List<EndpointStats> stats) {
+        List<Disposable> connections = new ArrayList<>();
+        for(EndpointStats endpoint : stats) {
+            for(int user = 0; user < users; user++) {
+                String username = username(user);
+                for(int connection = 0; connection < connectionsPerUser; connection++) {
+                    connections.add(webClient.get()
+                            .uri(uri -> uri.path(endpoint.endpoint).queryParam("username", username).build())
+                            .accept(MediaType.TEXT_EVENT_STREAM)
+                            .retrieve()
+                            .bodyToFlux(SSE)
+                            .subscribe(endpoint::onEvent, e -> {
+                                endpoint.errors.increment();
+                                log.warn("SSE connection to {} for {} failed: {}", endpoint.endpoint, username, e.getMessage());
+                            }));
+                }
+            }
+        }
+        return connections;
+    }
+
+    // Send at a fixed rate until stopAt. A producer that falls behind catches up by sending back to back:
+    private void produce(RabbitTemplate rabbitTemplate, Random random, long firstSend, long interval, long measureFrom, long stopAt) {
+        for(long next = firstSend; next < stopAt; next += interval) {
+            long wait = next - System.nanoTime();
+            if(wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            ApprovalRequestDto approvalRequest = approvalRequest(random);
+            long sendTime = System.nanoTime();
+            // Noted before sending, since the delivery can beat the send call back:
+            boolean measured = sendTime >= measureFrom;
+            if(measured) {
+                sentAt.put(approvalRequest.getFormId(), sendTime);
+            }
+            try {
+                rabbitTemplate.convertAndSend(exchange, Queues.APPROVAL_REQUEST.toString(), approvalRequest);
+                sent.increment();
+                if(measured) {
+                    measuredSent.increment();
+                }
+            } catch (Exception e) {
+                sentAt.remove(approvalRequest.getFormId());
+                sendFailures.increment();
+            }
+        }
+    }
+
+    // A request as Form-Service would send it. The service sets the creation time and deadline itself:
+    private ApprovalRequestDto approvalRequest(Random random) {
+        ApprovalRequestDto approvalRequest = new ApprovalRequestDto();
+        approvalRequest.setUsername(username(random.nextInt(users)));
+        approvalRequest.setFormId(new UUID(random.nextLong(), random.nextLong()));
+        approvalRequest.setRequester(username(random.nextInt(users)));
+        approvalRequest.setEventDate(LocalDate.now().plusDays(1 + random.nextInt(60)).toString());
+        return approvalRequest;
+    }
+
+    private static String username(int user) {
+        return "loadtest-user-" + user;
+    }
+
+    private UUID formIdOf(String data) {
+        try {
+            JsonNode formId = mapper.readTree(data).get("formId");
+            return formId == null ? null : UUID.fromString(formId.asText());
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private void report(List<EndpointStats> stats, long measuredNanos) {
+        double seconds = measuredNanos / 1e9;
+        long expectedPerEndpoint = measuredSent.sum() * connectionsPerUser;
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%nLoad test: %d users with %d connection(s) each per endpoint, %d requests/s for %ds after a %ds warmup%n",
+                users, connectionsPerUser, rate, duration.toSeconds(), warmup.toSeconds()));
+        report.append(String.format("Sent %d requests, %d measured (%.1f/s), %d failed to send. %d auto-approvals were dispatched.%n%n",
+                sent.sum(), measuredSent.sum(), measuredSent.sum() / seconds, sendFailures.sum(), autoApprovals.sum()));
+        report.append(String.format("%-20s %10s %10s %8s %10s %9s %9s %9s %9s %7s%n",
+                "Endpoint", "Expected", "Delivered", "Missing", "Events/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "Errors"));
+        for(EndpointStats endpoint : stats) {
+            long delivered = endpoint.delivered.sum();
+            Histogram latency = endpoint.latency;
+            report.append(String.format("%-20s %10d %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f %7d%n",
+                    endpoint.endpoint, expectedPerEndpoint, delivered, Math.max(0, expectedPerEndpoint - delivered), delivered / seconds,
+                    millis(latency.getValueAtPercentile(50)), millis(latency.getValueAtPercentile(99)),
+                    millis(latency.getValueAtPercentile(99.9)), millis(latency.getMaxValue()), endpoint.errors.sum()));
+        }
+        System.out.println(report);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,47 @@
+package com.skillstorm.loadtest;
+
+import com.skillstorm.MessageServiceApi;
+import com.skillstorm.configs.CassandraConfig;
+import com.skillstorm.configs.KinesisConfig;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.cassandra.CassandraAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.cassandra.CassandraDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.cassandra.CassandraReactiveDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.cassandra.CassandraReactiveRepositoriesAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.cassandra.CassandraRepositoriesAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
+
+// Runs the whole service in one JVM against local stand-ins and puts it under load:
+//  - Cassandra is replaced by in-memory tables (StandInsConfig), so CassandraConfig and Spring Boot's Cassandra
+//    auto-configuration are left out;
+//  - RabbitMQ by an embedded AMQP broker (EmbeddedBroker), started before the service so it connects as usual;
+//  - Kinesis by an in-memory stream (FakeKinesisAsyncClient), in place of the client from KinesisConfig.
+// Everything else is the service as it's deployed, with the loadtest profile layered over its configuration. LoadDriver
+// then opens the SSE connections, sends the approval requests and reports what it measured.
+//
+//   java -jar target/loadtest.jar --loadtest.rate=5000 --loadtest.users=2000
+@SpringBootConfiguration
+@EnableAutoConfiguration(exclude = {CassandraAutoConfiguration.class, CassandraDataAutoConfiguration.class,
+        CassandraReactiveDataAutoConfiguration.class, CassandraRepositoriesAutoConfiguration.class,
+        CassandraReactiveRepositoriesAutoConfiguration.class})
+@ComponentScan(basePackages = "com.skillstorm", excludeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE,
+        classes = {MessageServiceApi.class, CassandraConfig.class, KinesisConfig.class}))
+public class LoadTest {
+
+    // RabbitMqConfig always connects on the default port:
+    static final int AMQP_PORT = 5672;
+
+    public static void main(String[] args) throws Exception {
+        try(EmbeddedBroker broker = new EmbeddedBroker(AMQP_PORT);
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(LoadTest.class)
+                    .profiles("loadtest")
+                    .run(args)) {
+            context.getBean(LoadDriver.class).run();
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,75 @@
+package com.skillstorm.loadtest;
+
+import com.skillstorm.loadtest.standins.*;
+import com.skillstorm.repositories.ApprovalDeadlineRepository;
+import com.skillstorm.repositories.ApprovalRequestRepository;
+import com.skillstorm.repositories.DeadlineScanWatermarkRepository;
+import com.skillstorm.repositories.InboxCountRepository;
+import com.skillstorm.repositories.KinesisCheckpointRepository;
+import com.skillstorm.repositories.VerificationRequestRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.cassandra.core.ReactiveCassandraOperations;
+import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
+
+import java.time.Duration;
+import java.util.List;
+
+// Replaces CassandraConfig and KinesisConfig, which LoadTest leaves out. The service's repositories and template are
+// backed by in-memory tables, and its Kinesis client by an in-memory stream:
+@Configuration
+public class StandInsConfig {
+
+    // The template writes straight to the tables, past any proxies wrapped around the repository beans:
+    private final InMemoryApprovalRequestRepository approvalRequests = new InMemoryApprovalRequestRepository();
+    private final InMemoryApprovalDeadlineRepository approvalDeadlines = new InMemoryApprovalDeadlineRepository();
+    private final InMemoryVerificationRequestRepository verificationRequests = new InMemoryVerificationRequestRepository();
+    private final InMemoryKinesisCheckpointRepository kinesisCheckpoints = new InMemoryKinesisCheckpointRepository();
+    private final InMemoryInboxCountRepository inboxCounts = new InMemoryInboxCountRepository();
+    private final InMemoryDeadlineScanWatermarkRepository scanWatermarks = new InMemoryDeadlineScanWatermarkRepository();
+
+    @Bean
+    public ApprovalRequestRepository approvalRequestRepository() {
+        return approvalRequests;
+    }
+
+    @Bean
+    public ApprovalDeadlineRepository approvalDeadlineRepository() {
+        return approvalDeadlines;
+    }
+
+    @Bean
+    public VerificationRequestRepository verificationRequestRepository() {
+        return verificationRequests;
+    }
+
+    @Bean
+    public KinesisCheckpointRepository kinesisCheckpointRepository() {
+        return kinesisCheckpoints;
+    }
+
+    @Bean
+    public InboxCountRepository inboxCountRepository() {
+        return inboxCounts;
+    }
+
+    @Bean
+    public DeadlineScanWatermarkRepository deadlineScanWatermarkRepository() {
+        return scanWatermarks;
+    }
+
+    @Bean
+    public ReactiveCassandraOperations reactiveCassandraTemplate() {
+        return InMemoryCassandraOperations.over(List.of(approvalRequests, approvalDeadlines, verificationRequests, kinesisCheckpoints,
+                inboxCounts, scanWatermarks));
+    }
+
+    @Bean
+    public KinesisAsyncClient kinesisAsyncClient(@Value("${loadtest.kinesis.shards:4}") int shards,
+                                                 @Value("${loadtest.kinesis.subscription-seconds:300}") long subscriptionSeconds,
+                                                 @Value("${loadtest.kinesis.event-interval-millis:0}") long eventIntervalMillis,
+                                                 @Value("${loadtest.kinesis.throttle-rate:0.0}") double throttleRate) {
+        return new FakeKinesisAsyncClient(shards, Duration.ofSeconds(subscriptionSeconds), Duration.ofMillis(eventIntervalMillis), throttleRate);
+    }
+}
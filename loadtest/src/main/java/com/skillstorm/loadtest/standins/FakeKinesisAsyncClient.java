@@ -0,0 +1,197 @@
+package com.skillstorm.loadtest.standins;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import software.amazon.awssdk.core.async.SdkPublisher;
+import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
+import software.amazon.awssdk.services.kinesis.model.*;
+import software.amazon.awssdk.services.kinesis.model.Record;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Stands in for Kinesis Data Streams: one stream with a fixed set of open shards, held in memory. PutRecords appends each
+// record to a shard picked by its partition key, and SubscribeToShard pushes records to enhanced fan-out subscribers as
+// they're put, so latency measured through it is the service's own rather than the stream's. Like real ones,
+// subscriptions end after a while and have to be renewed, and a fraction of records can be rejected as throttled so the
+// publisher's retries get exercised too. Every record is kept for the length of the run.
+public class FakeKinesisAsyncClient implements KinesisAsyncClient {
+
+    private final Map<String, StreamShard> shards;
+    private final List<StreamShard> shardsByHash;
+    private final Duration subscriptionDuration;
+    private final Duration eventInterval;
+    private final double throttleRate;
+
+    public FakeKinesisAsyncClient(int shardCount, Duration subscriptionDuration, Duration eventInterval, double throttleRate) {
+        this.shardsByHash = IntStream.range(0, shardCount)
+                .mapToObj(shard -> new StreamShard(String.format("shardId-%012d", shard)))
+                .toList();
+        this.shards = shardsByHash.stream()
+                .collect(Collectors.toMap(shard -> shard.id, Function.identity()));
+        this.subscriptionDuration = subscriptionDuration;
+        this.eventInterval = eventInterval;
+        this.throttleRate = throttleRate;
+    }
+
+    @Override
+    public CompletableFuture<ListShardsResponse> listShards(ListShardsRequest request) {
+        return CompletableFuture.completedFuture(ListShardsResponse.builder()
+                .shards(shardsByHash.stream()
+                        .map(shard -> Shard.builder()
+                                .shardId(shard.id)
+                                .sequenceNumberRange(SequenceNumberRange.builder().startingSequenceNumber(sequenceNumber(1)).build())
+                                .build())
+                        .toList())
+                .build());
+    }
+
+    @Override
+    public CompletableFuture<PutRecordsResponse> putRecords(PutRecordsRequest request) {
+        List<PutRecordsResultEntry> results = new ArrayList<>();
+        int failed = 0;
+        for(PutRecordsRequestEntry entry : request.records()) {
+            if(throttleRate > 0 && ThreadLocalRandom.current().nextDouble() < throttleRate) {
+                failed++;
+                results.add(PutRecordsResultEntry.builder()
+                        .errorCode("ProvisionedThroughputExceededException")
+                        .errorMessage("Rate exceeded for shard in the load test")
+                        .build());
+                continue;
+            }
+            StreamShard shard = shardsByHash.get(Math.floorMod(entry.partitionKey().hashCode(), shardsByHash.size()));
+            Record record = shard.append(entry);
+            results.add(PutRecordsResultEntry.builder()
+                    .shardId(shard.id)
+                    .sequenceNumber(record.sequenceNumber())
+                    .build());
+        }
+        return CompletableFuture.completedFuture(PutRecordsResponse.builder()
+                .records(results)
+                .failedRecordCount(failed)
+                .build());
+    }
+
+    // The handler gets the records as events on the stream, ending with a normal completion once the subscription has run
+    // its course. Cancelling the returned future ends it early:
+    @Override
+    public CompletableFuture<Void> subscribeToShard(SubscribeToShardRequest request, SubscribeToShardResponseHandler handler) {
+        StreamShard shard = shards.get(request.shardId());
+        if(shard == null) {
+            return CompletableFuture.failedFuture(ResourceNotFoundException.builder()
+                    .message("Shard " + request.shardId() + " does not exist")
+                    .build());
+        }
+
+        CompletableFuture<Void> subscription = new CompletableFuture<>();
+        Sinks.One<Boolean> ended = Sinks.one();
+        subscription.whenComplete((done, e) -> ended.tryEmitValue(true));
+
+        Flux<SubscribeToShardEventStream> events = shard.subscribe(request.startingPosition())
+                .transform(this::batch)
+                .map(records -> SubscribeToShardEvent.builder()
+                        .records(records)
+                        .continuationSequenceNumber(records.get(records.size() - 1).sequenceNumber())
+                        .millisBehindLatest(0L)
+                        .build())
+                .cast(SubscribeToShardEventStream.class)
+                .take(subscriptionDuration)
+                .takeUntilOther(ended.asMono())
+                .publishOn(Schedulers.parallel())
+                .doOnComplete(() -> {
+                    handler.complete();
+                    subscription.complete(null);
+                })
+                .doOnError(e -> {
+                    handler.exceptionOccurred(e);
+                    subscription.completeExceptionally(e);
+                });
+
+        handler.responseReceived(SubscribeToShardResponse.builder().build());
+        handler.onEventStream(SdkPublisher.adapt(events));
+        return subscription;
+    }
+
+    private Flux<List<Record>> batch(Flux<Record> records) {
+        if(eventInterval.isZero()) {
+            return records.map(List::of);
+        }
+        return records.bufferTimeout(10_000, eventInterval);
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    // Sequence numbers count up from 1 within each shard, padded so they also sort as strings:
+    private static String sequenceNumber(long position) {
+        return String.format("%020d", position);
+    }
+
+    private static final class StreamShard {
+
+        private final String id;
+
+        // Guarded by this, so every subscriber sees the records in the order they were appended:
+        private final List<Record> records = new ArrayList<>();
+        private final Set<Sinks.Many<Record>> subscribers = ConcurrentHashMap.newKeySet();
+
+        private StreamShard(String id) {
+            this.id = id;
+        }
+
+        private synchronized Record append(PutRecordsRequestEntry entry) {
+            Record record = Record.builder()
+                    .sequenceNumber(sequenceNumber(records.size() + 1))
+                    .partitionKey(entry.partitionKey())
+                    .data(entry.data())
+                    .approximateArrivalTimestamp(Instant.now())
+                    .build();
+            records.add(record);
+            subscribers.forEach(subscriber -> subscriber.tryEmitNext(record));
+            return record;
+        }
+
+        // Whatever's already in the shard after the starting position, then new records as they arrive. The backlog is
+        // queued up and the subscriber registered together, so nothing appended in between is missed:
+        private synchronized Flux<Record> subscribe(StartingPosition position) {
+            Sinks.Many<Record> subscriber = Sinks.many().unicast().onBackpressureBuffer();
+            records.subList(firstIndex(position), records.size()).forEach(subscriber::tryEmitNext);
+            subscribers.add(subscriber);
+            return subscriber.asFlux()
+                    .doFinally(signal -> subscribers.remove(subscriber));
+        }
+
+        private int firstIndex(StartingPosition position) {
+            return switch(position.type()) {
+                case TRIM_HORIZON -> 0;
+                case AT_SEQUENCE_NUMBER -> clamp(Long.parseLong(position.sequenceNumber()) - 1);
+                case AFTER_SEQUENCE_NUMBER -> clamp(Long.parseLong(position.sequenceNumber()));
+                case AT_TIMESTAMP -> (int) records.stream()
+                        .takeWhile(record -> record.approximateArrivalTimestamp().isBefore(position.timestamp()))
+                        .count();
+                default -> records.size();
+            };
+        }
+
+        private int clamp(long index) {
+            return (int) Math.max(0, Math.min(index, records.size()));
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.skillstorm.loadtest.standins;
+
+import com.skillstorm.entities.ApprovalDeadline;
+import com.skillstorm.repositories.ApprovalDeadlineRepository;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+
+public class InMemoryApprovalDeadlineRepository extends InMemoryTable<ApprovalDeadline> implements ApprovalDeadlineRepository {
+
+    public InMemoryApprovalDeadlineRepository() {
+        super(ApprovalDeadline.class,
+                deadline -> List.of(deadline.getBucket(), deadline.getShard()),
+                deadline -> List.of(deadline.getApprovalDeadline(), deadline.getUsername(), deadline.getFormId()));
+    }
+
+    // In clustering order, as Cassandra would return them:
+    @Override
+    public Flux<ApprovalDeadline> findAllByBucketAndShardBetween(LocalDateTime bucket, int shard, LocalDateTime from, LocalDateTime to) {
+        return partition(List.of(bucket, shard))
+                .filter(deadline -> !deadline.getApprovalDeadline().isBefore(from) && deadline.getApprovalDeadline().isBefore(to))
+                .sort(Comparator.comparing(ApprovalDeadline::getApprovalDeadline));
+    }
+}
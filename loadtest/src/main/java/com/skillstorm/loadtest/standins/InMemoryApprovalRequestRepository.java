@@ -0,0 +1,67 @@
+package com.skillstorm.loadtest.standins;
+
+import com.skillstorm.entities.ApprovalRequest;
+import com.skillstorm.repositories.ApprovalRequestRepository;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.UUID;
+
+public class InMemoryApprovalRequestRepository extends InMemoryTable<ApprovalRequest> implements ApprovalRequestRepository {
+
+    public InMemoryApprovalRequestRepository() {
+        super(ApprovalRequest.class, ApprovalRequest::getUsername, ApprovalRequest::getFormId);
+    }
+
+    @Override
+    public Mono<ApprovalRequest> findByUsernameAndFormId(String username, UUID formId) {
+        return row(username, formId);
+    }
+
+    @Override
+    public Mono<Void> deleteByUsernameAndFormId(String username, UUID formId) {
+        return row(username, formId)
+                .flatMap(this::delete);
+    }
+
+    @Override
+    public Flux<ApprovalRequest> findAllByUsername(String username) {
+        return partition(username);
+    }
+
+    @Override
+    public Mono<Slice<ApprovalRequest>> findAllByUsername(String username, Pageable pageable) {
+        return slice(partition(username), pageable);
+    }
+
+    @Override
+    public Mono<Slice<ApprovalRequest>> findAll(Pageable pageable) {
+        return slice(findAll(), pageable);
+    }
+
+    @Override
+    public Mono<Boolean> markDispatched(String username, UUID formId) {
+        return row(username, formId)
+                .doOnNext(approvalRequest -> approvalRequest.setDispatched(true))
+                .hasElement();
+    }
+
+    @Override
+    public Mono<List<UUID>> markViewed(String username, List<UUID> formIds) {
+        return Flux.fromIterable(formIds)
+                .concatMap(formId -> row(username, formId))
+                .filter(approvalRequest -> !approvalRequest.isViewed())
+                .doOnNext(approvalRequest -> approvalRequest.setViewed(true))
+                .map(ApprovalRequest::getFormId)
+                .collectList();
+    }
+
+    @Override
+    public Flux<ApprovalRequest> findAllByUsernameAndFormIdIn(String username, List<UUID> formIds) {
+        return Flux.fromIterable(formIds)
+                .concatMap(formId -> row(username, formId));
+    }
+}
@@ -0,0 +1,145 @@
+package com.skillstorm.loadtest.standins;
+
+import org.springframework.data.cassandra.core.ReactiveCassandraBatchOperations;
+import org.springframework.data.cassandra.core.ReactiveCassandraOperations;
+import org.springframework.data.cassandra.core.cql.ReactiveCqlOperations;
+import org.springframework.data.cassandra.core.cql.WriteOptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Stands in for the ReactiveCassandraOperations template, writing to the same in-memory tables as the repositories. The
+// service only uses the template for single and batched inserts and for the lightweight transactions behind the deadline
+// shard leases, so those are all that's supported. Anything else fails loudly, so a new use of the template shows up the
+// first time the load test runs rather than being silently ignored.
+//
+// There's only ever one instance of the service in a load test, so every lease statement succeeds and it ends up owning
+// every shard, as a lone instance would against real Cassandra.
+public final class InMemoryCassandraOperations {
+
+    private final Map<Class<?>, InMemoryTable<?>> tables;
+
+    private InMemoryCassandraOperations(Collection<? extends InMemoryTable<?>> tables) {
+        this.tables = tables.stream()
+                .collect(Collectors.toMap(InMemoryTable::entityType, Function.identity()));
+    }
+
+    public static ReactiveCassandraOperations over(Collection<? extends InMemoryTable<?>> tables) {
+        InMemoryCassandraOperations operations = new InMemoryCassandraOperations(tables);
+        return proxy(ReactiveCassandraOperations.class, operations::invokeTemplate);
+    }
+
+    private Object invokeTemplate(Object proxy, Method method, Object[] args) {
+        return switch(method.getName()) {
+            case "insert" -> {
+                if(args.length != 1 || args[0] instanceof Class) {
+                    throw unsupported(method);
+                }
+                yield Mono.fromSupplier(() -> {
+                    write(args[0]);
+                    return args[0];
+                });
+            }
+            case "batchOps" -> new Batch().proxy();
+            case "getReactiveCqlOperations" -> proxy(ReactiveCqlOperations.class, this::invokeCql);
+            default -> throw unsupported(method);
+        };
+    }
+
+    // Only the lease statements go through here. Conditional updates report that they were applied, and the membership
+    // and lease queries find no one else and no shard taken:
+    private Object invokeCql(Object proxy, Method method, Object[] args) {
+        if(method.getName().equals("execute") && args.length == 2 && args[0] instanceof String) {
+            return Mono.just(true);
+        }
+        if(method.getName().equals("queryForRows") && args.length == 2 && args[0] instanceof String) {
+            return Flux.empty();
+        }
+        throw unsupported(method);
+    }
+
+    private void write(Object row) {
+        table(row).write(row);
+    }
+
+    private void remove(Object row) {
+        table(row).remove(row);
+    }
+
+    @SuppressWarnings("unchecked")
+    private InMemoryTable<Object> table(Object row) {
+        InMemoryTable<?> table = tables.get(row.getClass());
+        if(table == null) {
+            throw new IllegalArgumentException("No in-memory table for " + row.getClass().getName());
+        }
+        return (InMemoryTable<Object>) table;
+    }
+
+    // Collects inserts, updates and deletes and applies them all when executed:
+    private final class Batch {
+
+        private final List<Runnable> statements = new ArrayList<>();
+
+        private ReactiveCassandraBatchOperations proxy() {
+            return InMemoryCassandraOperations.proxy(ReactiveCassandraBatchOperations.class, this::invoke);
+        }
+
+        private Object invoke(Object proxy, Method method, Object[] args) {
+            switch(method.getName()) {
+                case "insert", "update" -> rows(method, args).forEach(row -> statements.add(() -> write(row)));
+                case "delete" -> rows(method, args).forEach(row -> statements.add(() -> remove(row)));
+                case "withTimestamp" -> { }
+                case "execute" -> {
+                    return Mono.fromRunnable(() -> statements.forEach(Runnable::run));
+                }
+                default -> throw unsupported(method);
+            }
+            return proxy;
+        }
+
+        // Write options, such as a TTL, are ignored:
+        private List<?> rows(Method method, Object[] args) {
+            if(args.length == 1 && args[0] instanceof Object[] rows) {
+                return Arrays.asList(rows);
+            }
+            if((args.length == 1 || args.length == 2 && args[1] instanceof WriteOptions) && args[0] instanceof Iterable<?> rows) {
+                List<Object> list = new ArrayList<>();
+                rows.forEach(list::add);
+                return list;
+            }
+            throw unsupported(method);
+        }
+    }
+
+    private interface Handler {
+        Object invoke(Object proxy, Method method, Object[] args);
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        InvocationHandler invocationHandler = (proxy, method, args) -> {
+            if(method.getDeclaringClass() == Object.class) {
+                return switch(method.getName()) {
+                    case "equals" -> proxy == args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    default -> "InMemory" + type.getSimpleName();
+                };
+            }
+            return handler.invoke(proxy, method, args == null ? new Object[0] : args);
+        };
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, invocationHandler));
+    }
+
+    private static UnsupportedOperationException unsupported(Method method) {
+        return new UnsupportedOperationException("The load test's in-memory Cassandra doesn't support " + method);
+    }
+}
@@ -0,0 +1,18 @@
+package com.skillstorm.loadtest.standins;
+
+import com.skillstorm.entities.DeadlineScanWatermark;
+import com.skillstorm.repositories.DeadlineScanWatermarkRepository;
+import reactor.core.publisher.Mono;
+
+// One row per partition, so the shard is both keys:
+public class InMemoryDeadlineScanWatermarkRepository extends InMemoryTable<DeadlineScanWatermark> implements DeadlineScanWatermarkRepository {
+
+    public InMemoryDeadlineScanWatermarkRepository() {
+        super(DeadlineScanWatermark.class, DeadlineScanWatermark::getShard, DeadlineScanWatermark::getShard);
+    }
+
+    @Override
+    public Mono<DeadlineScanWatermark> findByShard(int shard) {
+        return row(shard, shard);
+    }
+}
@@ -0,0 +1,39 @@
+package com.skillstorm.loadtest.standins;
+
+import com.skillstorm.entities.InboxCount;
+import com.skillstorm.repositories.InboxCountRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+
+public class InMemoryInboxCountRepository extends InMemoryTable<InboxCount> implements InboxCountRepository {
+
+    public InMemoryInboxCountRepository() {
+        super(InboxCount.class, InboxCount::getUsername, InboxCount::getEventDate);
+    }
+
+    @Override
+    public Flux<InboxCount> findAllByUsername(String username) {
+        return partition(username);
+    }
+
+    // Counters start from zero the first time they're incremented, as in Cassandra. Increments are serialized so none are
+    // lost between reading a row and writing it back:
+    @Override
+    public Mono<Void> increment(String username, LocalDate eventDate, long total, long unread) {
+        return Mono.fromRunnable(() -> {
+            synchronized (this) {
+                InboxCount count = get(username, eventDate);
+                if(count == null) {
+                    count = new InboxCount();
+                    count.setUsername(username);
+                    count.setEventDate(eventDate);
+                }
+                count.setTotal(count.getTotal() + total);
+                count.setUnread(count.getUnread() + unread);
+                write(count);
+            }
+        });
+    }
+}
@@ -0,0 +1,17 @@
+package com.skillstorm.loadtest.standins;
+
+import com.skillstorm.entities.KinesisCheckpoint;
+import com.skillstorm.repositories.KinesisCheckpointRepository;
+import reactor.core.publisher.Flux;
+
+public class InMemoryKinesisCheckpointRepository extends InMemoryTable<KinesisCheckpoint> implements KinesisCheckpointRepository {
+
+    public InMemoryKinesisCheckpointRepository() {
+        super(KinesisCheckpoint.class, KinesisCheckpoint::getConsumerName, KinesisCheckpoint::getShardId);
+    }
+
+    @Override
+    public Flux<KinesisCheckpoint> findAllByConsumerName(String consumerName) {
+        return partition(consumerName);
+    }
+}
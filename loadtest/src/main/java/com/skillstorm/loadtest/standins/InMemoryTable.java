@@ -0,0 +1,208 @@
+package com.skillstorm.loadtest.standins;
+
+import org.reactivestreams.Publisher;
+import org.springframework.data.cassandra.core.query.CassandraPageRequest;
+import org.springframework.data.cassandra.repository.ReactiveCassandraRepository;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+// A Cassandra table held in memory, standing in for one of the service's repositories. Rows are grouped into partitions
+// and keyed within them by their clustering columns, so the queries the service makes, which all stay within a partition,
+// only look at that partition. Writes are upserts, as they are in Cassandra. Rows are stored as they're handed over
+// rather than copied, which is fine for a load test but means callers shouldn't rely on them being detached.
+//
+// Every table has a composite primary key, so there is no single id to look rows up by and the id based methods aren't
+// supported.
+public abstract class InMemoryTable<T> implements ReactiveCassandraRepository<T, String> {
+
+    private final Class<T> entityType;
+    private final Function<T, Object> partitionKey;
+    private final Function<T, Object> clusteringKey;
+
+    private final Map<Object, Map<Object, T>> partitions = new ConcurrentHashMap<>();
+
+    protected InMemoryTable(Class<T> entityType, Function<T, Object> partitionKey, Function<T, Object> clusteringKey) {
+        this.entityType = entityType;
+        this.partitionKey = partitionKey;
+        this.clusteringKey = clusteringKey;
+    }
+
+    public Class<T> entityType() {
+        return entityType;
+    }
+
+    public void write(T row) {
+        partitions.computeIfAbsent(partitionKey.apply(row), key -> new ConcurrentHashMap<>())
+                .put(clusteringKey.apply(row), row);
+    }
+
+    public void remove(T row) {
+        Map<Object, T> partition = partitions.get(partitionKey.apply(row));
+        if(partition != null) {
+            partition.remove(clusteringKey.apply(row));
+        }
+    }
+
+    // Every row in one partition:
+    protected Flux<T> partition(Object partitionKey) {
+        return Flux.defer(() -> {
+            Map<Object, T> partition = partitions.get(partitionKey);
+            return partition == null ? Flux.empty() : Flux.fromIterable(new ArrayList<>(partition.values()));
+        });
+    }
+
+    // A single row, by its full primary key:
+    protected Mono<T> row(Object partitionKey, Object clusteringKey) {
+        return Mono.fromSupplier(() -> get(partitionKey, clusteringKey));
+    }
+
+    // The same, or null if there's no such row:
+    protected T get(Object partitionKey, Object clusteringKey) {
+        Map<Object, T> partition = partitions.get(partitionKey);
+        return partition == null ? null : partition.get(clusteringKey);
+    }
+
+    // One page of the given rows. The paging state is simply the offset of the page's first row, so pages only line up
+    // while the rows being paged through don't change:
+    protected Mono<Slice<T>> slice(Flux<T> rows, Pageable pageable) {
+        ByteBuffer pagingState = pageable instanceof CassandraPageRequest page ? page.getPagingState() : null;
+        long offset = pagingState == null ? 0 : pagingState.getLong(pagingState.position());
+        int size = pageable.getPageSize();
+        return rows.skip(offset)
+                .take(size + 1)
+                .collectList()
+                .map(page -> {
+                    boolean hasNext = page.size() > size;
+                    Pageable next = CassandraPageRequest.of(PageRequest.of(0, size),
+                            hasNext ? ByteBuffer.allocate(Long.BYTES).putLong(0, offset + size) : null);
+                    return new SliceImpl<>(hasNext ? page.subList(0, size) : page, next, hasNext);
+                });
+    }
+
+    @Override
+    public <S extends T> Mono<S> insert(S entity) {
+        return Mono.fromSupplier(() -> {
+            write(entity);
+            return entity;
+        });
+    }
+
+    @Override
+    public <S extends T> Flux<S> insert(Iterable<S> entities) {
+        return Flux.fromIterable(entities).doOnNext(this::write);
+    }
+
+    @Override
+    public <S extends T> Flux<S> insert(Publisher<S> entities) {
+        return Flux.from(entities).doOnNext(this::write);
+    }
+
+    @Override
+    public <S extends T> Mono<S> save(S entity) {
+        return insert(entity);
+    }
+
+    @Override
+    public <S extends T> Flux<S> saveAll(Iterable<S> entities) {
+        return insert(entities);
+    }
+
+    @Override
+    public <S extends T> Flux<S> saveAll(Publisher<S> entities) {
+        return insert(entities);
+    }
+
+    @Override
+    public Flux<T> findAll() {
+        return Flux.defer(() -> Flux.fromIterable(new ArrayList<>(partitions.values())))
+                .flatMapIterable(partition -> new ArrayList<>(partition.values()));
+    }
+
+    @Override
+    public Mono<Long> count() {
+        return Mono.fromSupplier(() -> partitions.values().stream()
+                .mapToLong(Map::size)
+                .sum());
+    }
+
+    @Override
+    public Mono<Void> delete(T entity) {
+        return Mono.fromRunnable(() -> remove(entity));
+    }
+
+    @Override
+    public Mono<Void> deleteAll(Iterable<? extends T> entities) {
+        return Mono.fromRunnable(() -> entities.forEach(this::remove));
+    }
+
+    @Override
+    public Mono<Void> deleteAll(Publisher<? extends T> entities) {
+        return Flux.from(entities)
+                .doOnNext(this::remove)
+                .then();
+    }
+
+    @Override
+    public Mono<Void> deleteAll() {
+        return Mono.fromRunnable(partitions::clear);
+    }
+
+    @Override
+    public Mono<T> findById(String id) {
+        return Mono.error(unsupported());
+    }
+
+    @Override
+    public Mono<T> findById(Publisher<String> id) {
+        return Mono.error(unsupported());
+    }
+
+    @Override
+    public Mono<Boolean> existsById(String id) {
+        return Mono.error(unsupported());
+    }
+
+    @Override
+    public Mono<Boolean> existsById(Publisher<String> id) {
+        return Mono.error(unsupported());
+    }
+
+    @Override
+    public Flux<T> findAllById(Iterable<String> ids) {
+        return Flux.error(unsupported());
+    }
+
+    @Override
+    public Flux<T> findAllById(Publisher<String> ids) {
+        return Flux.error(unsupported());
+    }
+
+    @Override
+    public Mono<Void> deleteById(String id) {
+        return Mono.error(unsupported());
+    }
+
+    @Override
+    public Mono<Void> deleteById(Publisher<String> id) {
+        return Mono.error(unsupported());
+    }
+
+    @Override
+    public Mono<Void> deleteAllById(Iterable<? extends String> ids) {
+        return Mono.error(unsupported());
+    }
+
+    private UnsupportedOperationException unsupported() {
+        return new UnsupportedOperationException(entityType.getSimpleName() + " rows are keyed by their whole primary key, not by a single id");
+    }
+}
@@ -0,0 +1,17 @@
+package com.skillstorm.loadtest.standins;
+
+import com.skillstorm.entities.VerificationRequest;
+import com.skillstorm.repositories.VerificationRequestRepository;
+import reactor.core.publisher.Flux;
+
+public class InMemoryVerificationRequestRepository extends InMemoryTable<VerificationRequest> implements VerificationRequestRepository {
+
+    public InMemoryVerificationRequestRepository() {
+        super(VerificationRequest.class, VerificationRequest::getUsername, VerificationRequest::getFormId);
+    }
+
+    @Override
+    public Flux<VerificationRequest> findAllByUsername(String username) {
+        return partition(username);
+    }
+}
@@ -0,0 +1,204 @@
+package com.skillstorm.codecs;
+
+import com.skillstorm.dtos.ApprovalRequestDto;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.UUID;
+
+// Hand-written binary encoding of ApprovalRequestDto. Typically under half the size of the JSON and several times cheaper to
+// produce and parse, since there are no field names, no number or date formatting, and no reflection.
+//
+// Layout (version 1):
+//   version        byte
+//   flags          byte    bit 0 viewed, bits 1-4 set when formId, eventDate, timeCreated, approvalDeadline are present
+//   username       string
+//   formId         2 x 8-byte long, most significant first            (if present)
+//   requester      string
+//   eventDate      zigzag varint epoch day                            (if present)
+//   timeCreated    zigzag varint epoch second, varint nanos            (if present)
+//   approvalDeadline                                                   (if present, as timeCreated)
+//
+// Strings are a varint of the UTF-8 length plus one, where zero means null, followed by the bytes. Date-times are local, so
+// they're counted from the epoch as if they were UTC purely as a way of numbering them.
+public class ApprovalRequestBinaryCodec implements PayloadCodec<ApprovalRequestDto> {
+
+    public static final String CONTENT_TYPE = "application/vnd.skillstorm.approval-request.v1+binary";
+
+    private static final byte VERSION = 1;
+
+    private static final int VIEWED = 1;
+    private static final int HAS_FORM_ID = 1 << 1;
+    private static final int HAS_EVENT_DATE = 1 << 2;
+    private static final int HAS_TIME_CREATED = 1 << 3;
+    private static final int HAS_APPROVAL_DEADLINE = 1 << 4;
+
+    @Override
+    public String contentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public byte[] encode(ApprovalRequestDto approvalRequest) {
+        int flags = (approvalRequest.isViewed() ? VIEWED : 0)
+                | (approvalRequest.getFormId() != null ? HAS_FORM_ID : 0)
+                | (approvalRequest.getEventDate() != null ? HAS_EVENT_DATE : 0)
+                | (approvalRequest.getTimeCreated() != null ? HAS_TIME_CREATED : 0)
+                | (approvalRequest.getApprovalDeadline() != null ? HAS_APPROVAL_DEADLINE : 0);
+
+        Writer writer = new Writer(64);
+        writer.writeByte(VERSION);
+        writer.writeByte(flags);
+        writer.writeString(approvalRequest.getUsername());
+        if(approvalRequest.getFormId() != null) {
+            writer.writeLong(approvalRequest.getFormId().getMostSignificantBits());
+            writer.writeLong(approvalRequest.getFormId().getLeastSignificantBits());
+        }
+        writer.writeString(approvalRequest.getRequester());
+        if(approvalRequest.getEventDate() != null) {
+            writer.writeZigZag(LocalDate.parse(approvalRequest.getEventDate()).toEpochDay());
+        }
+        if(approvalRequest.getTimeCreated() != null) {
+            writer.writeDateTime(approvalRequest.getTimeCreated());
+        }
+        if(approvalRequest.getApprovalDeadline() != null) {
+            writer.writeDateTime(approvalRequest.getApprovalDeadline());
+        }
+        return writer.toByteArray();
+    }
+
+    @Override
+    public ApprovalRequestDto decode(ByteBuffer buffer) {
+        byte version = buffer.get();
+        if(version != VERSION) {
+            throw new IllegalArgumentException("Unsupported approval request encoding version " + version);
+        }
+        int flags = buffer.get();
+
+        ApprovalRequestDto approvalRequest = new ApprovalRequestDto();
+        approvalRequest.setViewed((flags & VIEWED) != 0);
+        approvalRequest.setUsername(readString(buffer));
+        if((flags & HAS_FORM_ID) != 0) {
+            approvalRequest.setFormId(new UUID(buffer.getLong(), buffer.getLong()));
+        }
+        approvalRequest.setRequester(readString(buffer));
+        if((flags & HAS_EVENT_DATE) != 0) {
+            approvalRequest.setEventDate(LocalDate.ofEpochDay(readZigZag(buffer)).toString());
+        }
+        if((flags & HAS_TIME_CREATED) != 0) {
+            approvalRequest.setTimeCreated(readDateTime(buffer));
+        }
+        if((flags & HAS_APPROVAL_DEADLINE) != 0) {
+            approvalRequest.setApprovalDeadline(readDateTime(buffer));
+        }
+        return approvalRequest;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = (int) readVarint(buffer) - 1;
+        if(length < 0) {
+            return null;
+        }
+
+        String value;
+        if(buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    private static LocalDateTime readDateTime(ByteBuffer buffer) {
+        long epochSecond = readZigZag(buffer);
+        int nanos = (int) readVarint(buffer);
+        return LocalDateTime.ofEpochSecond(epochSecond, nanos, ZoneOffset.UTC);
+    }
+
+    private static long readZigZag(ByteBuffer buffer) {
+        long encoded = readVarint(buffer);
+        return (encoded >>> 1) ^ -(encoded & 1);
+    }
+
+    private static long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    // Growable byte array with just the primitives the layout needs:
+    private static final class Writer {
+
+        private byte[] bytes;
+        private int size;
+
+        private Writer(int initialCapacity) {
+            this.bytes = new byte[initialCapacity];
+        }
+
+        private void ensureCapacity(int extra) {
+            if(size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+
+        private void writeByte(int value) {
+            ensureCapacity(1);
+            bytes[size++] = (byte) value;
+        }
+
+        private void writeLong(long value) {
+            ensureCapacity(8);
+            for(int shift = 56; shift >= 0; shift -= 8) {
+                bytes[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        private void writeVarint(long value) {
+            ensureCapacity(10);
+            while((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        private void writeZigZag(long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        private void writeString(String value) {
+            if(value == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(utf8.length + 1L);
+            ensureCapacity(utf8.length);
+            System.arraycopy(utf8, 0, bytes, size, utf8.length);
+            size += utf8.length;
+        }
+
+        private void writeDateTime(LocalDateTime value) {
+            writeZigZag(value.toEpochSecond(ZoneOffset.UTC));
+            writeVarint(value.getNano());
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+}
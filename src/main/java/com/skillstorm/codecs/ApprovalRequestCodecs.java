@@ -0,0 +1,36 @@
+package com.skillstorm.codecs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.skillstorm.dtos.ApprovalRequestDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+// The codecs available for ApprovalRequestDto, looked up by wire format when sending and by content type when receiving:
+@Component
+public class ApprovalRequestCodecs {
+
+    private final PayloadCodec<ApprovalRequestDto> json;
+    private final PayloadCodec<ApprovalRequestDto> binary = new ApprovalRequestBinaryCodec();
+
+    @Autowired
+    public ApprovalRequestCodecs(ObjectMapper mapper) {
+        this.json = new JsonPayloadCodec<>(mapper, ApprovalRequestDto.class);
+    }
+
+    public PayloadCodec<ApprovalRequestDto> json() {
+        return json;
+    }
+
+    public PayloadCodec<ApprovalRequestDto> binary() {
+        return binary;
+    }
+
+    public PayloadCodec<ApprovalRequestDto> forFormat(WireFormat wireFormat) {
+        return wireFormat == WireFormat.BINARY ? binary : json;
+    }
+
+    // Anything not marked as our binary encoding is treated as JSON:
+    public PayloadCodec<ApprovalRequestDto> forContentType(String contentType) {
+        return contentType != null && contentType.startsWith(ApprovalRequestBinaryCodec.CONTENT_TYPE) ? binary : json;
+    }
+}
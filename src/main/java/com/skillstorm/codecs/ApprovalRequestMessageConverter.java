@@ -0,0 +1,48 @@
+package com.skillstorm.codecs;
+
+import com.skillstorm.dtos.ApprovalRequestDto;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.nio.ByteBuffer;
+
+// Rabbit message converter for ApprovalRequestDto in our binary encoding. Anything else is handed to the fallback
+// converter, so it can be used for every message a template sends:
+public class ApprovalRequestMessageConverter implements MessageConverter {
+
+    private final PayloadCodec<ApprovalRequestDto> codec;
+    private final MessageConverter fallback;
+
+    public ApprovalRequestMessageConverter(PayloadCodec<ApprovalRequestDto> codec, MessageConverter fallback) {
+        this.codec = codec;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties) throws MessageConversionException {
+        if(!(object instanceof ApprovalRequestDto approvalRequest)) {
+            return fallback.toMessage(object, messageProperties);
+        }
+
+        byte[] body = codec.encode(approvalRequest);
+        messageProperties.setContentType(codec.contentType());
+        messageProperties.setContentLength(body.length);
+        return new Message(body, messageProperties);
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws MessageConversionException {
+        String contentType = message.getMessageProperties().getContentType();
+        if(contentType == null || !contentType.startsWith(codec.contentType())) {
+            return fallback.fromMessage(message);
+        }
+
+        try {
+            return codec.decode(ByteBuffer.wrap(message.getBody()));
+        } catch (RuntimeException e) {
+            throw new MessageConversionException("Failed to decode approval request", e);
+        }
+    }
+}
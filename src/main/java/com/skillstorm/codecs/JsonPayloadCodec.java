@@ -0,0 +1,54 @@
+package com.skillstorm.codecs;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class JsonPayloadCodec<T> implements PayloadCodec<T> {
+
+    private final ObjectWriter writer;
+    private final ObjectReader reader;
+    private final Class<T> type;
+
+    // The reader and writer are bound to the type up front so each call skips the lookup. Derived properties such as
+    // urgent are written out but have no setter, so the reader ignores properties it doesn't know:
+    public JsonPayloadCodec(ObjectMapper mapper, Class<T> type) {
+        this.writer = mapper.writerFor(type);
+        this.reader = mapper.readerFor(type).without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        this.type = type;
+    }
+
+    @Override
+    public String contentType() {
+        return MediaType.APPLICATION_JSON_VALUE;
+    }
+
+    @Override
+    public byte[] encode(T value) {
+        try {
+            return writer.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to serialize " + type.getSimpleName(), e);
+        }
+    }
+
+    // Parse the heap array in place when there is one, otherwise stream from the buffer:
+    @Override
+    public T decode(ByteBuffer buffer) {
+        try {
+            T value = buffer.hasArray()
+                    ? reader.<T>readValue(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining())
+                    : reader.<T>readValue(new ByteBufferBackedInputStream(buffer.duplicate()));
+            buffer.position(buffer.limit());
+            return value;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to deserialize " + type.getSimpleName(), e);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.skillstorm.codecs;
+
+import java.nio.ByteBuffer;
+
+// Turns a payload into bytes and back for one wire format. Decoding reads straight from the buffer it's given, starting at
+// its position, so callers never need to copy a message body or go through an intermediate string:
+public interface PayloadCodec<T> {
+
+    // MIME type that identifies this encoding, e.g. in a message's content-type header:
+    String contentType();
+
+    byte[] encode(T value);
+
+    T decode(ByteBuffer buffer);
+}
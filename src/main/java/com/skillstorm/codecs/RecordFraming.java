@@ -0,0 +1,95 @@
+package com.skillstorm.codecs;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+// How several encoded payloads are packed into one Kinesis record. JSON payloads go into a JSON array so the record is
+// still plain JSON. Binary payloads follow a marker byte, each preceded by its length as a varint. The marker can never
+// start a JSON document, so readers can tell the two apart from the first byte.
+public enum RecordFraming {
+
+    JSON_ARRAY {
+        @Override
+        public void append(ByteArrayOutputStream record, byte[] payload) {
+            record.write(record.size() == 0 ? '[' : ',');
+            record.writeBytes(payload);
+        }
+
+        @Override
+        public int overhead(byte[] payload) {
+            // Separator plus the closing bracket:
+            return 2;
+        }
+
+        @Override
+        public void finish(ByteArrayOutputStream record) {
+            record.write(']');
+        }
+    },
+
+    LENGTH_PREFIXED {
+        @Override
+        public void append(ByteArrayOutputStream record, byte[] payload) {
+            if(record.size() == 0) {
+                record.write(MARKER);
+            }
+            for(int length = payload.length; ; length >>>= 7) {
+                if((length & ~0x7F) == 0) {
+                    record.write(length);
+                    break;
+                }
+                record.write((length & 0x7F) | 0x80);
+            }
+            record.writeBytes(payload);
+        }
+
+        @Override
+        public int overhead(byte[] payload) {
+            // Marker plus at most a five byte length:
+            return 6;
+        }
+
+        @Override
+        public void finish(ByteArrayOutputStream record) {
+        }
+    };
+
+    public static final int MARKER = 0xB1;
+
+    public static RecordFraming of(WireFormat wireFormat) {
+        return wireFormat == WireFormat.BINARY ? LENGTH_PREFIXED : JSON_ARRAY;
+    }
+
+    // Add a payload to a record being built. The record starts out empty:
+    public abstract void append(ByteArrayOutputStream record, byte[] payload);
+
+    // Upper bound on the bytes appending this payload adds beyond the payload itself:
+    public abstract int overhead(byte[] payload);
+
+    public abstract void finish(ByteArrayOutputStream record);
+
+    public static boolean isLengthPrefixed(ByteBuffer record) {
+        return record.hasRemaining() && (record.get(record.position()) & 0xFF) == MARKER;
+    }
+
+    // Hand each payload of a length-prefixed record to the consumer as a slice of the record's buffer, without copying:
+    public static void forEachPayload(ByteBuffer record, Consumer<ByteBuffer> payloadConsumer) {
+        ByteBuffer buffer = record.duplicate();
+        buffer.get();
+        while(buffer.hasRemaining()) {
+            int length = 0;
+            for(int shift = 0; ; shift += 7) {
+                byte b = buffer.get();
+                length |= (b & 0x7F) << shift;
+                if((b & 0x80) == 0) {
+                    break;
+                }
+            }
+            ByteBuffer payload = buffer.slice();
+            payload.limit(length);
+            payloadConsumer.accept(payload);
+            buffer.position(buffer.position() + length);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.skillstorm.codecs;
+
+// Encodings we can put on the wire. JSON is what Form-Service and any other outside producer speaks, so it's always
+// accepted; BINARY is a compact encoding for traffic between our own components:
+public enum WireFormat {
+    JSON,
+    BINARY
+}
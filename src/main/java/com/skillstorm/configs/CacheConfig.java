@@ -1,20 +1,36 @@
 package com.skillstorm.configs;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.AsyncCache;
 import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.skillstorm.codecs.ApprovalRequestCodecs;
+import com.skillstorm.codecs.JsonPayloadCodec;
+import com.skillstorm.codecs.PayloadCodec;
 import com.skillstorm.dtos.ApprovalRequestDto;
-import com.skillstorm.services.MessageService;
+import com.skillstorm.dtos.InboxItemDto;
+import com.skillstorm.dtos.VerificationRequestDto;
+import com.skillstorm.services.ApprovalRequestLoader;
+import com.skillstorm.services.InboxCounters;
+import com.skillstorm.utils.MessageKey;
+import com.skillstorm.utils.ReplayBuffer;
+import com.skillstorm.utils.SubscriberRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.cache.caffeine.CaffeineCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import java.util.List;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executors;
-import java.util.function.Function;
 
 @Configuration
 @EnableCaching
@@ -34,21 +50,120 @@ public class CacheConfig {
         return cacheManager;
     }
 
+    // Each user's inbox, keyed by username. Loaded from Cassandra on first read and then updated in place as messages are
+    // added, read or removed. Other instances may also be writing to the same inboxes, so entries expire a fixed time after
+    // they were loaded to bound how stale they can get, however often they're updated here. Hit, miss and load-time
+    // statistics are published as the 'inbox' cache metrics:
     @Bean
-    public AsyncLoadingCache<String, ApprovalRequestDto> approvalRequestsCache(MessageService messageService) {
-        return Caffeine.newBuilder()
-                .executor(Executors.newFixedThreadPool(1))
-                .buildAsync((key, executor) -> loadApprovalRequest(key, messageService));
+    public AsyncCache<String, Map<UUID, ApprovalRequestDto>> inboxesCache(MeterRegistry meterRegistry,
+                                                                          @Value("${inbox-cache.maximum-size:10000}") long maximumSize,
+                                                                          @Value("${inbox-cache.ttl-minutes:5}") long ttlMinutes) {
+        return CaffeineCacheMetrics.monitor(meterRegistry,
+                Caffeine.newBuilder()
+                        .maximumSize(maximumSize)
+                        .expireAfter(CacheConfig.<String, Map<UUID, ApprovalRequestDto>>expireAfterLoad(Duration.ofMinutes(ttlMinutes)))
+                        .recordStats()
+                        .buildAsync(),
+                "inbox");
+    }
+
+    // Each user's pending verification requests, keyed by username. Cached and kept current just like their approval
+    // requests, as the 'verification-inbox' cache metrics:
+    @Bean
+    public AsyncCache<String, Map<UUID, VerificationRequestDto>> verificationInboxesCache(MeterRegistry meterRegistry,
+                                                                                         @Value("${inbox-cache.maximum-size:10000}") long maximumSize,
+                                                                                         @Value("${inbox-cache.ttl-minutes:5}") long ttlMinutes) {
+        return CaffeineCacheMetrics.monitor(meterRegistry,
+                Caffeine.newBuilder()
+                        .maximumSize(maximumSize)
+                        .expireAfter(CacheConfig.<String, Map<UUID, VerificationRequestDto>>expireAfterLoad(Duration.ofMinutes(ttlMinutes)))
+                        .recordStats()
+                        .buildAsync(),
+                "verification-inbox");
+    }
+
+    // Each user's inbox counts by event date, keyed by username. Kept current in place like the inboxes and bounded the same
+    // way, but far smaller per user. Statistics are published as the 'inbox-counts' cache metrics:
+    @Bean
+    public AsyncCache<String, NavigableMap<LocalDate, InboxCounters.Tally>> inboxCountsCache(MeterRegistry meterRegistry,
+                                                                                            @Value("${inbox-cache.maximum-size:10000}") long maximumSize,
+                                                                                            @Value("${inbox-cache.ttl-minutes:5}") long ttlMinutes) {
+        return CaffeineCacheMetrics.monitor(meterRegistry,
+                Caffeine.newBuilder()
+                        .maximumSize(maximumSize)
+                        .expireAfter(CacheConfig.<String, NavigableMap<LocalDate, InboxCounters.Tally>>expireAfterLoad(Duration.ofMinutes(ttlMinutes)))
+                        .recordStats()
+                        .buildAsync(),
+                "inbox-counts");
+    }
+
+    // The most recent approval requests for each user, kept as serialized JSON so SSE clients that reconnect can be sent
+    // what they missed. The same JSON is what goes out in each event's data. Bounded in total bytes, per user, and by time.
+    // Open connections share the event bus's per-subscriber queue settings:
+    @Bean
+    public ReplayBuffer<ApprovalRequestDto> approvalRequestUpdates(ApprovalRequestCodecs codecs,
+                                                                   @Value("${sse.replay-buffer.size:64}") int size,
+                                                                   @Value("${sse.replay-buffer.max-bytes-per-user:65536}") long maxBytesPerUser,
+                                                                   @Value("${sse.replay-buffer.max-bytes:67108864}") long maxBytes,
+                                                                   @Value("${sse.replay-buffer.ttl-minutes:30}") long ttlMinutes,
+                                                                   @Value("${event-bus.subscriber-queue-capacity:256}") int subscriberQueueCapacity,
+                                                                   @Value("${event-bus.overflow-policy:COALESCE}") SubscriberRegistry.OverflowPolicy overflowPolicy) {
+        PayloadCodec<ApprovalRequestDto> json = codecs.json();
+        return new ReplayBuffer<>("approval-request", size, maxBytesPerUser, maxBytes, Duration.ofMinutes(ttlMinutes),
+                json::encode,
+                bytes -> json.decode(ByteBuffer.wrap(bytes)),
+                new SubscriberRegistry<>(subscriberQueueCapacity, overflowPolicy, event -> event.reset() ? null : event.value().getFormId()));
+    }
+
+    // The same for the combined inbox stream, which carries verification requests as well as approval requests. It has its
+    // own ids, so clients resume each stream with the ids they got from it:
+    @Bean
+    public ReplayBuffer<InboxItemDto> inboxItemUpdates(ObjectMapper objectMapper,
+                                                       @Value("${sse.replay-buffer.size:64}") int size,
+                                                       @Value("${sse.replay-buffer.max-bytes-per-user:65536}") long maxBytesPerUser,
+                                                       @Value("${sse.replay-buffer.max-bytes:67108864}") long maxBytes,
+                                                       @Value("${sse.replay-buffer.ttl-minutes:30}") long ttlMinutes,
+                                                       @Value("${event-bus.subscriber-queue-capacity:256}") int subscriberQueueCapacity,
+                                                       @Value("${event-bus.overflow-policy:COALESCE}") SubscriberRegistry.OverflowPolicy overflowPolicy) {
+        PayloadCodec<InboxItemDto> json = new JsonPayloadCodec<>(objectMapper, InboxItemDto.class);
+        return new ReplayBuffer<>("inbox-item", size, maxBytesPerUser, maxBytes, Duration.ofMinutes(ttlMinutes),
+                json::encode,
+                bytes -> json.decode(ByteBuffer.wrap(bytes)),
+                new SubscriberRegistry<>(subscriberQueueCapacity, overflowPolicy, event -> event.reset() ? null : event.value().getFormId()));
     }
 
-    private CompletableFuture<ApprovalRequestDto> loadApprovalRequest(String compoundKey, MessageService messageService) {
-        // Assuming compoundKey format is username-messageId
-        String[] parts = compoundKey.split("-");
-        String username = parts[0];
-        UUID messageId = UUID.fromString(parts[1]);
+    // Individual messages, keyed by username and form id. Loads are non-blocking and bulk lookups are batched per user
+    // partition by the loader. Like inboxes, they expire a fixed time after loading:
+    @Bean
+    public AsyncLoadingCache<MessageKey, ApprovalRequestDto> approvalRequestsCache(ApprovalRequestLoader approvalRequestLoader, MeterRegistry meterRegistry) {
+        return CaffeineCacheMetrics.monitor(meterRegistry,
+                Caffeine.newBuilder()
+                        .maximumSize(1000)
+                        .expireAfter(CacheConfig.<MessageKey, ApprovalRequestDto>expireAfterLoad(Duration.ofMinutes(5)))
+                        .recordStats()
+                        .buildAsync(approvalRequestLoader),
+                "messages");
+    }
+
+    // Entries expire a fixed time after they're created, which for an async cache is when their load completes. Updating
+    // an entry in place leaves that alone, where expireAfterWrite would start the clock again on every update and let an
+    // active user's entry live for ever:
+    private static <K, V> Expiry<K, V> expireAfterLoad(Duration timeToLive) {
+        return new Expiry<>() {
+            @Override
+            public long expireAfterCreate(K key, V value, long currentTime) {
+                return timeToLive.toNanos();
+            }
+
+            @Override
+            public long expireAfterUpdate(K key, V value, long currentTime, long currentDuration) {
+                return currentDuration;
+            }
 
-        return CompletableFuture.supplyAsync(() -> messageService.getMessageByUsernameAndFormId(username, messageId)
-                        .toFuture())
-                .thenCompose(Function.identity());
+            @Override
+            public long expireAfterRead(K key, V value, long currentTime, long currentDuration) {
+                return currentDuration;
+            }
+        };
     }
 }
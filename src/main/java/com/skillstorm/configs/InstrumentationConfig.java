@@ -0,0 +1,42 @@
+package com.skillstorm.configs;
+
+import com.skillstorm.aspects.LoggingAspect;
+import com.skillstorm.utils.ReactiveTimers;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.ClassFilter;
+import org.springframework.aop.MethodMatcher;
+import org.springframework.aop.support.ComposablePointcut;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Arrays;
+import java.util.List;
+
+@Configuration
+public class InstrumentationConfig {
+
+    // Apply LoggingAspect to the beans in the packages listed in instrumentation.aspect.packages, and nothing else. A bean
+    // matches if its class, or for a repository one of the interfaces it implements, is in one of those packages (or below
+    // them). With no packages listed there's no advisor at all:
+    @Bean
+    @ConditionalOnExpression("'${instrumentation.aspect.packages:}'.trim() != ''")
+    public Advisor loggingAdvisor(ReactiveTimers timers, @Value("${instrumentation.aspect.packages}") String packages) {
+        List<String> prefixes = Arrays.stream(packages.split(","))
+                .map(String::trim)
+                .filter(prefix -> !prefix.isEmpty())
+                .map(prefix -> prefix + ".")
+                .toList();
+
+        ClassFilter classFilter = type -> type != ReactiveTimers.class
+                && (inPackages(type, prefixes) || Arrays.stream(type.getInterfaces()).anyMatch(implemented -> inPackages(implemented, prefixes)));
+
+        return new DefaultPointcutAdvisor(new ComposablePointcut(classFilter, MethodMatcher.TRUE), new LoggingAspect(timers));
+    }
+
+    private static boolean inPackages(Class<?> type, List<String> prefixes) {
+        return prefixes.stream().anyMatch(prefix -> type.getName().startsWith(prefix));
+    }
+}
@@ -1,18 +1,28 @@
 package com.skillstorm.configs;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
+import software.amazon.awssdk.services.kinesis.KinesisAsyncClientBuilder;
+
+import java.net.URI;
 
 @Configuration
 public class KinesisConfig {
 
+    // Setting kinesis.endpoint points the client at a local stand-in such as LocalStack or kinesalite instead of AWS. The
+    // container closes the client once everything using it has shut down:
     @Bean
-    public KinesisAsyncClient kinesisAsyncClient() {
-        return KinesisAsyncClient.builder()
-                .region(Region.US_EAST_2)
-                .build();
+    public KinesisAsyncClient kinesisAsyncClient(@Value("${kinesis.region:us-east-2}") String region,
+                                                 @Value("${kinesis.endpoint:}") String endpoint) {
+        KinesisAsyncClientBuilder builder = KinesisAsyncClient.builder()
+                .region(Region.of(region));
+        if(!endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        return builder.build();
     }
 
 }
@@ -1,30 +1,48 @@
 package com.skillstorm.configs;
 
+import com.skillstorm.codecs.ApprovalRequestBinaryCodec;
+import com.skillstorm.codecs.ApprovalRequestCodecs;
+import com.skillstorm.codecs.ApprovalRequestMessageConverter;
+import com.skillstorm.codecs.WireFormat;
 import com.skillstorm.constants.Queues;
-import com.skillstorm.services.MessageService;
-import com.skillstorm.services.MessageServiceImpl;
+import com.skillstorm.services.FailedDeliveries;
 import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
-import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
-import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
-import org.springframework.amqp.rabbit.listener.adapter.MessageListenerAdapter;
+import org.springframework.amqp.rabbit.listener.api.RabbitListenerErrorHandler;
+import org.springframework.amqp.rabbit.support.ListenerExecutionFailedException;
+import org.springframework.amqp.support.converter.ContentTypeDelegatingMessageConverter;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Configuration
 public class RabbitMqConfig {
 
     @Value("${AWS_HOSTNAME:localhost}")
     private String host;
 
+    // Incoming messages are decoded according to their content type, so JSON from Form-Service and our own binary approval
+    // requests are both understood. Outgoing approval requests use messaging.wire-format, and everything else goes out as
+    // JSON:
     @Bean
-    public MessageConverter messageConverter() {
-        return new Jackson2JsonMessageConverter();
+    public MessageConverter messageConverter(ApprovalRequestCodecs approvalRequestCodecs,
+                                             @Value("${messaging.wire-format:JSON}") WireFormat wireFormat) {
+        Jackson2JsonMessageConverter json = new Jackson2JsonMessageConverter();
+        ApprovalRequestMessageConverter binary = new ApprovalRequestMessageConverter(approvalRequestCodecs.binary(), json);
+
+        ContentTypeDelegatingMessageConverter converter = new ContentTypeDelegatingMessageConverter(wireFormat == WireFormat.BINARY ? binary : json);
+        converter.addDelegate(MessageProperties.CONTENT_TYPE_JSON, json);
+        converter.addDelegate(ApprovalRequestBinaryCodec.CONTENT_TYPE, binary);
+        return converter;
     }
 
     // Exchanges:
@@ -37,41 +55,82 @@ public class RabbitMqConfig {
         CachingConnectionFactory connectionFactory = new CachingConnectionFactory(host);
         connectionFactory.setUsername("guest");
         connectionFactory.setPassword("guest");
+        // Have the broker confirm each published message, and hand back ones it couldn't route, so senders that care can
+        // tell whether a message actually made it:
+        connectionFactory.setPublisherConfirmType(CachingConnectionFactory.ConfirmType.CORRELATED);
+        connectionFactory.setPublisherReturns(true);
         return connectionFactory;
     }
 
     // Configure the RabbitTemplate:
     @Bean
-    public RabbitTemplate rabbitTemplate() {
+    public RabbitTemplate rabbitTemplate(MessageConverter messageConverter) {
         RabbitTemplate rabbitTemplate = new RabbitTemplate(connectionFactory());
-        rabbitTemplate.setMessageConverter(messageConverter());
+        rabbitTemplate.setMessageConverter(messageConverter);
         rabbitTemplate.setReplyTimeout(6000);
+        rabbitTemplate.setMandatory(true);
         return rabbitTemplate;
     }
 
-    /* Manual Ack will be a work in progress for now
-    // Configure the MessageListenerAdapter to inject into the container and tell it which methods to monitor:
+    // Listener container factories, one per inbound queue so each can be tuned on its own. Acks are manual: listeners
+    // acknowledge a delivery once the reactive pipeline it started has completed. Since listener threads never block on
+    // that work, prefetch is what bounds how many deliveries each consumer has in flight:
     @Bean
-    public  MessageListenerAdapter messageListenerAdapter(MessageServiceImpl messageService, MessageConverter messageConverter) {
-        MessageListenerAdapter adapter = new MessageListenerAdapter(messageService);
-        adapter.setMessageConverter(messageConverter);
-        adapter.setDefaultListenerMethod("postApprovalRequestToInboxByUsername");
-        return adapter;
+    public SimpleRabbitListenerContainerFactory approvalRequestListenerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory,
+                                                                               @Value("${rabbit.listeners.approval-request.concurrency:2}") int concurrency,
+                                                                               @Value("${rabbit.listeners.approval-request.max-concurrency:4}") int maxConcurrency,
+                                                                               @Value("${rabbit.listeners.approval-request.prefetch:250}") int prefetch) {
+        return listenerFactory(configurer, connectionFactory, concurrency, maxConcurrency, prefetch);
     }
 
-    // Configure the listener container and set AcknowledgeMode to manual to prevent premature acknowledgements
-    // when consuming Spring Webflux classes:
     @Bean
-    public MessageListenerContainer messageListenerContainer(ConnectionFactory connectionFactory, MessageListenerAdapter messageListenerAdapter) {
-        SimpleMessageListenerContainer container = new SimpleMessageListenerContainer();
-        container.setConnectionFactory(connectionFactory);
-        container.setMessageListener(messageListenerAdapter);
-        container.setQueues(approvalRequestQueue(), deletionRequestQueue(), completionVerificationQueue());
-        container.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+    public SimpleRabbitListenerContainerFactory deletionRequestListenerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory,
+                                                                               @Value("${rabbit.listeners.deletion-request.concurrency:1}") int concurrency,
+                                                                               @Value("${rabbit.listeners.deletion-request.max-concurrency:2}") int maxConcurrency,
+                                                                               @Value("${rabbit.listeners.deletion-request.prefetch:100}") int prefetch) {
+        return listenerFactory(configurer, connectionFactory, concurrency, maxConcurrency, prefetch);
+    }
 
-        return container;
+    @Bean
+    public SimpleRabbitListenerContainerFactory completionVerificationListenerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory,
+                                                                                      @Value("${rabbit.listeners.completion-verification.concurrency:1}") int concurrency,
+                                                                                      @Value("${rabbit.listeners.completion-verification.max-concurrency:2}") int maxConcurrency,
+                                                                                      @Value("${rabbit.listeners.completion-verification.prefetch:100}") int prefetch) {
+        return listenerFactory(configurer, connectionFactory, concurrency, maxConcurrency, prefetch);
+    }
+
+    // Deliveries that fail before the listener gets them, such as ones whose body can't be converted, would otherwise stay
+    // unacknowledged, since acks are manual. They'd fail the same way every time, so they're parked rather than retried:
+    @Bean
+    public RabbitListenerErrorHandler rejectingErrorHandler(FailedDeliveries failedDeliveries) {
+        return new RabbitListenerErrorHandler() {
+
+            @Override
+            public Object handleError(Message amqpMessage, org.springframework.messaging.Message<?> message,
+                                      ListenerExecutionFailedException exception) {
+                throw exception;
+            }
+
+            @Override
+            public Object handleError(Message amqpMessage, com.rabbitmq.client.Channel channel,
+                                      org.springframework.messaging.Message<?> message,
+                                      ListenerExecutionFailedException exception) throws Exception {
+                failedDeliveries.handle(amqpMessage, channel, exception, false);
+                return null;
+            }
+        };
+    }
+
+    private SimpleRabbitListenerContainerFactory listenerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory,
+                                                                 int concurrency, int maxConcurrency, int prefetch) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        factory.setConcurrentConsumers(concurrency);
+        factory.setMaxConcurrentConsumers(maxConcurrency);
+        factory.setPrefetchCount(prefetch);
+        return factory;
     }
-    */
 
     // Create the exchange:
     @Bean
@@ -81,16 +140,39 @@ public class RabbitMqConfig {
 
     // Create the queues:
 
-    // From Form-Service:
+    // From Form-Service. Rejected deliveries are dead-lettered through the default exchange to the queue's retry queue:
     @Bean
     public Queue approvalRequestQueue() {
-        return new Queue(Queues.APPROVAL_REQUEST.toString());
+        return inboundQueue(Queues.APPROVAL_REQUEST.toString());
     }
 
     @Bean
-    public Queue deletionRequestQueue() { return new Queue(Queues.DELETION_REQUEST.toString()); }
+    public Queue deletionRequestQueue() { return inboundQueue(Queues.DELETION_REQUEST.toString()); }
+
+    @Bean Queue completionVerificationQueue() { return inboundQueue(Queues.COMPLETION_VERIFICATION.toString()); }
+
+    // Each inbound queue's retry queue holds failed deliveries for rabbit.retry.delay-millis, then dead-letters them back to
+    // the inbound queue. Its parked queue holds the ones that were given up on (see FailedDeliveries):
+    @Bean
+    public Declarables retryQueues(@Value("${rabbit.retry.delay-millis:5000}") int delayMillis) {
+        List<Declarable> queues = new ArrayList<>();
+        for(Queues queue : List.of(Queues.APPROVAL_REQUEST, Queues.DELETION_REQUEST, Queues.COMPLETION_VERIFICATION)) {
+            queues.add(QueueBuilder.durable(FailedDeliveries.retryQueue(queue.toString()))
+                    .ttl(delayMillis)
+                    .deadLetterExchange("")
+                    .deadLetterRoutingKey(queue.toString())
+                    .build());
+            queues.add(QueueBuilder.durable(FailedDeliveries.parkedQueue(queue.toString())).build());
+        }
+        return new Declarables(queues);
+    }
 
-    @Bean Queue completionVerificationQueue() { return new Queue(Queues.COMPLETION_VERIFICATION.toString()); }
+    private static Queue inboundQueue(String name) {
+        return QueueBuilder.durable(name)
+                .deadLetterExchange("")
+                .deadLetterRoutingKey(FailedDeliveries.retryQueue(name))
+                .build();
+    }
 
 
     // To Form-Service:
@@ -99,10 +181,11 @@ public class RabbitMqConfig {
         return new Queue(Queues.AUTO_APPROVAL.toString());
     }
 
-    // Internal queues for implementing SSEs:
+    // Internal queues for implementing SSEs. Each instance declares its own, which goes away with the instance's
+    // connection, and EventBus binds it for each user with a connection open here:
     @Bean
-    public Queue approvalRequestUpdatesQueue() {
-        return new Queue(Queues.APPROVAL_REQUEST_UPDATES.toString(), true);
+    public Queue inboxUpdatesQueue() {
+        return new AnonymousQueue(new Base64UrlNamingStrategy(Queues.INBOX_UPDATES + "."));
     }
 
 
@@ -117,14 +200,6 @@ public class RabbitMqConfig {
                 .noargs();
     }
 
-    @Bean
-    public Binding approvalRequestUpdatesBinding(Queue approvalRequestUpdatesQueue, Exchange directExchange) {
-        return BindingBuilder.bind(approvalRequestUpdatesQueue)
-                .to(directExchange)
-                .with("user.*")
-                .noargs();
-    }
-
     // Deletion Request binding:
     @Bean
     public Binding deletionRequestBinding(Queue deletionRequestQueue, Exchange directExchange) {
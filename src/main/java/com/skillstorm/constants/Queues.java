@@ -10,8 +10,8 @@ public enum Queues {
     // To Form-Service:
     AUTO_APPROVAL("automatic-approval-queue"),
 
-    // Internal queues for implementing SSEs:
-    APPROVAL_REQUEST_UPDATES("approval-request-updates-queue");
+    // Internal queues for implementing SSEs. Each instance has its own, named with this as a prefix:
+    INBOX_UPDATES("inbox-updates-queue");
 
     private final String queue;
 
@@ -1,26 +1,36 @@
 package com.skillstorm.controllers;
 
-import com.skillstorm.dtos.ApprovalRequestDto;
 import com.skillstorm.services.KinesisService;
+import com.skillstorm.utils.ReactiveTimers;
+import com.skillstorm.utils.SseFrame;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.bind.annotation.*;
-import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+@Slf4j
 @RestController
 @RequestMapping("/kinesis")
 public class KinesisController {
 
     private final KinesisService kinesisService;
 
+    // Time from an update being framed to it being handed to each connection:
+    private final ReactiveTimers.Timing emissionLatency;
+
     @Autowired
-    public KinesisController(KinesisService kinesisService) {
+    public KinesisController(KinesisService kinesisService, ReactiveTimers timers) {
         this.kinesisService = kinesisService;
+        this.emissionLatency = timers.timing("sse.emission.latency", "endpoint", "/kinesis/pending");
     }
 
+    // Each update is framed once when its record is read, however many connections it goes out to:
     @GetMapping(value = "/pending", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public Flux<ApprovalRequestDto> pending(@RequestParam("username") String username) {
-        System.out.println("\n\nFetching new messages for user: " + username);
-        return kinesisService.getUpdatesForUser(username);
+    public Mono<Void> pending(@RequestParam("username") String username, ServerHttpResponse response) {
+        log.debug("Streaming new messages for {}", username);
+        return SseFrame.write(response, kinesisService.getUpdatesForUser(username)
+                .doOnNext(frame -> emissionLatency.recordSince(frame.createdNanos())));
     }
 }
@@ -1,12 +1,22 @@
 package com.skillstorm.controllers;
 
 import com.skillstorm.dtos.ApprovalRequestDto;
+import com.skillstorm.dtos.InboxCountsDto;
+import com.skillstorm.dtos.InboxItemDto;
+import com.skillstorm.dtos.PageDto;
 import com.skillstorm.services.MessageService;
+import com.skillstorm.utils.PageToken;
+import com.skillstorm.utils.ReactiveTimers;
+import com.skillstorm.utils.ReplayBuffer;
+import com.skillstorm.utils.SseFrame;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpHeaders;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -18,9 +28,21 @@ public class MessageController {
 
     private final MessageService messageService;
 
+    // Time from an event being framed to it being handed to each connection:
+    private final ReactiveTimers.Timing emissionLatency;
+
+    // Page size used when the request doesn't give one, and the most rows a single page may hold:
+    private final int defaultPageSize;
+    private final int maxPageSize;
+
     @Autowired
-    public MessageController(MessageService messageService) {
+    public MessageController(MessageService messageService, ReactiveTimers timers,
+                             @Value("${paging.default-size:100}") int defaultPageSize,
+                             @Value("${paging.max-size:1000}") int maxPageSize) {
         this.messageService = messageService;
+        this.emissionLatency = timers.timing("sse.emission.latency", "endpoint", "/messages/pending");
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
     }
 
     // Test endpoint:
@@ -29,9 +51,17 @@ public class MessageController {
         return Mono.just("Hello Message Service");
     }
 
-    // Testing utility:
+    // Testing utility. Returns one page of every user's messages; pass the page's next token back as page to get the one
+    // after it:
     @GetMapping
-    public Flux<ApprovalRequestDto> findAllMessages() {
+    public Mono<PageDto<ApprovalRequestDto>> findAllMessages(@RequestParam(value = "size", required = false) Integer size,
+                                                             @RequestParam(value = "page", required = false) String page) {
+        return Mono.defer(() -> messageService.findAll(pageable(page, size)));
+    }
+
+    // Testing utility. Streams every message as newline-delimited JSON, written out as rows arrive from the database:
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<ApprovalRequestDto> streamAllMessages() {
         return messageService.findAll();
     }
 
@@ -41,13 +71,67 @@ public class MessageController {
         return messageService.getApprovalRequestsByUsername(username.toLowerCase());
     }
 
-    // SSE emitter to send notification as new messages arrive:
+    // Same as above, one page at a time. Requested by giving a page size; pass each page's next token back as page:
+    @GetMapping(value = "/approval-requests", params = "size")
+    public Mono<PageDto<ApprovalRequestDto>> getApprovalRequestsByUsername(@RequestHeader("username") String username,
+                                                                           @RequestParam("size") int size,
+                                                                           @RequestParam(value = "page", required = false) String page) {
+        return Mono.defer(() -> messageService.getApprovalRequestsByUsername(username.toLowerCase(), pageable(page, size)));
+    }
+
+    // Same as above as newline-delimited JSON, written out as rows arrive rather than once the whole inbox has been read:
+    @GetMapping(value = "/approval-requests/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<ApprovalRequestDto> streamApprovalRequestsByUsername(@RequestHeader("username") String username) {
+        return messageService.streamApprovalRequestsByUsername(username.toLowerCase());
+    }
+
+    // Get everything waiting on a user in one response: approval requests and completion verification requests, merged in
+    // form id order. Each entry's kind says which it is:
+    @GetMapping("/inbox")
+    public Flux<InboxItemDto> getCombinedInbox(@RequestHeader("username") String username) {
+        return messageService.getCombinedInbox(username);
+    }
+
+    // Same as above as newline-delimited JSON, written out as rows arrive:
+    @GetMapping(value = "/inbox/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<InboxItemDto> streamCombinedInbox(@RequestHeader("username") String username) {
+        return messageService.streamCombinedInbox(username);
+    }
+
+    // SSE emitter for the combined inbox. Works like /pending below, with 'inbox-item' events for both kinds of request.
+    // Its event ids are its own, so a client reconnecting should send back the last one it got from this stream:
+    @GetMapping(value = "/inbox/pending", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Mono<Void> combinedInboxPending(@RequestParam("username") String username,
+                                           @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+                                           ServerHttpResponse response) {
+        return SseFrame.write(response, messageService.getCombinedInboxUpdates(username, lastEventId)
+                .map(ReplayBuffer.Event::frame));
+    }
+
+    // SSE emitter to send notification as new messages arrive. Every event carries an id; when the browser reconnects it
+    // sends back the last one it saw in Last-Event-ID and we replay only what it missed. If we can't, we send a 'reset'
+    // event and the client should reload its inbox from /approval-requests. Events arrive already framed, so they're
+    // written out as they are rather than serialized again for each connection:
     @GetMapping(value = "/pending", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public ResponseEntity<Flux<ApprovalRequestDto>> pending(@RequestParam("username") String username) {
-        // We need to tell our program to keep the connection open or it will close it immediately after returning the service method:
-        return ResponseEntity.ok()
-                        .header(HttpHeaders.CONNECTION, "keep-alive")
-                        .body(messageService.getApprovalRequestUpdates(username));
+    public Mono<Void> pending(@RequestParam("username") String username,
+                              @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+                              ServerHttpResponse response) {
+        return SseFrame.write(response, messageService.getApprovalRequestUpdates(username, lastEventId)
+                .map(ReplayBuffer.Event::frame)
+                .doOnNext(frame -> emissionLatency.recordSince(frame.createdNanos())));
+    }
+
+    // Badge counts for a user's inbox, without fetching the inbox itself:
+    @GetMapping("/counts")
+    public Mono<InboxCountsDto> getInboxCounts(@RequestHeader("username") String username) {
+        return messageService.getInboxCounts(username);
+    }
+
+    // SSE emitter for a user's badge counts. Sends the current counts as a 'counts' event on connecting and again each time
+    // they change. A client that falls behind only ever gets the latest:
+    @GetMapping(value = "/counts/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Mono<Void> inboxCountUpdates(@RequestParam("username") String username, ServerHttpResponse response) {
+        return SseFrame.write(response, messageService.getInboxCountUpdates(username));
     }
 
     // Mark message as read. May be refactored into a more general 'Edit Message' method, but I believe messages should be largely immutable:
@@ -56,9 +140,25 @@ public class MessageController {
         return messageService.markMessageAsViewed(username, formId);
     }
 
+    // Mark every message in the user's inbox as read:
+    @PutMapping("/read-all")
+    public Mono<Void> markAllMessagesAsViewed(@RequestHeader("username") String username) {
+        return messageService.markAllMessagesAsViewed(username);
+    }
+
     // Delete a message from inbox:
     @DeleteMapping
     public Mono<Void> deleteByUsernameAndFormId(@RequestBody Mono<ApprovalRequestDto> approvalRequestDto) {
         return approvalRequestDto.flatMap(messageService::deleteByUsernameAndFormId);
     }
+
+    // Resolve the requested page, with the size clamped to what we allow. A token we can't decode is the client's mistake:
+    private Pageable pageable(String page, Integer size) {
+        int pageSize = Math.max(1, Math.min(size == null ? defaultPageSize : size, maxPageSize));
+        try {
+            return PageToken.toPageable(page, pageSize);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid page token", e);
+        }
+    }
 }
@@ -8,6 +8,7 @@
 
     import java.time.LocalDate;
     import java.time.LocalDateTime;
+    import java.time.ZoneId;
     import java.time.temporal.ChronoUnit;
     import java.util.UUID;
 
@@ -23,12 +24,13 @@
         private LocalDateTime approvalDeadline;
         private boolean viewed;
 
+        // The columns of a partial row (see ApprovalRequest.isPartial) are left null:
         public ApprovalRequestDto(ApprovalRequest approvalRequest) {
             this.username = approvalRequest.getUsername();
             this.formId = approvalRequest.getFormId();
             this.requester = approvalRequest.getRequester();
-            this.eventDate = approvalRequest.getEventDate().toString() ;
-            this.timeCreated = approvalRequest.getTimeCreated().truncatedTo(ChronoUnit.MILLIS);
+            this.eventDate = approvalRequest.getEventDate() == null ? null : approvalRequest.getEventDate().toString();
+            this.timeCreated = approvalRequest.getTimeCreated() == null ? null : approvalRequest.getTimeCreated().truncatedTo(ChronoUnit.MILLIS);
             this.approvalDeadline = approvalRequest.getApprovalDeadline();
             this.viewed = approvalRequest.isViewed();
         }
@@ -47,9 +49,35 @@
             return approvalRequest;
         }
 
+        // Requests for events less than two weeks away are urgent. ISO dates sort the same way as the dates they stand for,
+        // so the event date is compared against the cutoff as a string rather than parsed every time a request is written:
         @JsonGetter
         public boolean isUrgent() {
-            return LocalDate.parse(eventDate)
-                    .isBefore(LocalDate.now().plusWeeks(2));
+            if(eventDate == null) {
+                return false;
+            }
+            if(eventDate.length() != UrgencyCutoff.ISO_DATE_LENGTH) {
+                return LocalDate.parse(eventDate).isBefore(LocalDate.now().plusWeeks(2));
+            }
+            return eventDate.compareTo(UrgencyCutoff.current()) < 0;
+        }
+
+        // The cutoff only moves at midnight, so it's worked out once a day:
+        private record UrgencyCutoff(String date, long validUntilMillis) {
+
+            private static final int ISO_DATE_LENGTH = "yyyy-MM-dd".length();
+
+            private static volatile UrgencyCutoff cached = new UrgencyCutoff("", 0);
+
+            private static String current() {
+                UrgencyCutoff cutoff = cached;
+                if(System.currentTimeMillis() >= cutoff.validUntilMillis()) {
+                    LocalDate today = LocalDate.now();
+                    cutoff = new UrgencyCutoff(today.plusWeeks(2).toString(),
+                            today.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli());
+                    cached = cutoff;
+                }
+                return cutoff.date();
+            }
         }
     }
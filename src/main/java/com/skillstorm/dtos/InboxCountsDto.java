@@ -0,0 +1,16 @@
+package com.skillstorm.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Badge counts for a user's inbox. Urgent requests are the ones isUrgent would flag, read or not:
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InboxCountsDto {
+
+    private long total;
+    private long unread;
+    private long urgent;
+}
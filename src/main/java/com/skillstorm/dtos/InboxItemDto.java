@@ -0,0 +1,40 @@
+package com.skillstorm.dtos;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+// One entry in a user's combined inbox: either a form awaiting their approval or a completed event awaiting their
+// verification. Which one it is is given by kind, and only the matching request is set:
+@Data
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class InboxItemDto {
+
+    public enum Kind {
+        APPROVAL,
+        VERIFICATION
+    }
+
+    private Kind kind;
+    private UUID formId;
+    private boolean viewed;
+    private ApprovalRequestDto approvalRequest;
+    private VerificationRequestDto verificationRequest;
+
+    public InboxItemDto(ApprovalRequestDto approvalRequest) {
+        this.kind = Kind.APPROVAL;
+        this.formId = approvalRequest.getFormId();
+        this.viewed = approvalRequest.isViewed();
+        this.approvalRequest = approvalRequest;
+    }
+
+    public InboxItemDto(VerificationRequestDto verificationRequest) {
+        this.kind = Kind.VERIFICATION;
+        this.formId = verificationRequest.getFormId();
+        this.viewed = verificationRequest.isViewed();
+        this.verificationRequest = verificationRequest;
+    }
+}
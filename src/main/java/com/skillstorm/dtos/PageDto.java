@@ -0,0 +1,23 @@
+package com.skillstorm.dtos;
+
+import com.skillstorm.utils.PageToken;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Slice;
+
+import java.util.List;
+import java.util.function.Function;
+
+// One page of a listing. Pass next back as the page parameter to get the following page; it's null on the last one:
+@Data
+@NoArgsConstructor
+public class PageDto<T> {
+
+    private List<T> items;
+    private String next;
+
+    public <E> PageDto(Slice<E> slice, Function<E, T> mapper) {
+        this.items = slice.getContent().stream().map(mapper).toList();
+        this.next = PageToken.next(slice);
+    }
+}
@@ -0,0 +1,72 @@
+package com.skillstorm.entities;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.cassandra.core.cql.PrimaryKeyType;
+import org.springframework.data.cassandra.core.mapping.PrimaryKeyColumn;
+import org.springframework.data.cassandra.core.mapping.Table;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+// Index of approval deadlines bucketed by the minute they expire in, so the deadline scanner can read just the buckets
+// that have expired instead of filtering the entire approval_request table:
+@Data
+@NoArgsConstructor
+@Table("approval_deadline_by_bucket")
+public class ApprovalDeadline {
+
+    // Each bucket is split into a fixed number of shards so a burst of requests expiring in the same minute doesn't all
+    // land in one partition:
+    public static final int SHARDS = 16;
+
+    @PrimaryKeyColumn(name = "bucket", ordinal = 0, type = PrimaryKeyType.PARTITIONED)
+    private LocalDateTime bucket;
+
+    @PrimaryKeyColumn(name = "shard", ordinal = 1, type = PrimaryKeyType.PARTITIONED)
+    private int shard;
+
+    @PrimaryKeyColumn(name = "approval_deadline", ordinal = 2, type = PrimaryKeyType.CLUSTERED)
+    private LocalDateTime approvalDeadline;
+
+    @PrimaryKeyColumn(name = "username", ordinal = 3, type = PrimaryKeyType.CLUSTERED)
+    private String username;
+
+    @PrimaryKeyColumn(name = "form_id", ordinal = 4, type = PrimaryKeyType.CLUSTERED)
+    private UUID formId;
+
+    // A partial request (see ApprovalRequest.isPartial) has no deadline, and so no index entry; its bucket and deadline
+    // are left null:
+    public ApprovalDeadline(ApprovalRequest approvalRequest) {
+        // Cassandra only stores timestamps to the millisecond, so truncate here to make sure the key we write matches the
+        // key we rebuild later from the stored ApprovalRequest when cleaning up:
+        if(approvalRequest.getApprovalDeadline() != null) {
+            this.approvalDeadline = approvalRequest.getApprovalDeadline().truncatedTo(ChronoUnit.MILLIS);
+            this.bucket = bucketOf(approvalDeadline);
+        }
+        this.shard = shardOf(approvalRequest.getUsername());
+        this.username = approvalRequest.getUsername();
+        this.formId = approvalRequest.getFormId();
+    }
+
+    // Deadlines are bucketed by the minute they fall in:
+    public static LocalDateTime bucketOf(LocalDateTime deadline) {
+        return deadline.truncatedTo(ChronoUnit.MINUTES);
+    }
+
+    public static int shardOf(String username) {
+        return Math.floorMod(username.hashCode(), SHARDS);
+    }
+
+    // All buckets that may contain deadlines falling within [from, to]:
+    public static List<LocalDateTime> bucketsBetween(LocalDateTime from, LocalDateTime to) {
+        List<LocalDateTime> buckets = new ArrayList<>();
+        for(LocalDateTime bucket = bucketOf(from); !bucket.isAfter(to); bucket = bucket.plusMinutes(1)) {
+            buckets.add(bucket);
+        }
+        return buckets;
+    }
+}
@@ -2,6 +2,7 @@ package com.skillstorm.entities;
 
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.cassandra.core.cql.PrimaryKeyType;
 import org.springframework.data.cassandra.core.mapping.Column;
 import org.springframework.data.cassandra.core.mapping.PrimaryKeyColumn;
@@ -34,4 +35,14 @@ public class ApprovalRequest {
     private LocalDateTime approvalDeadline;
 
     private boolean viewed;
+
+    // Set once the request has been handed to Form-Service for auto-approval and the broker has confirmed it:
+    private boolean dispatched;
+
+    // Whether this is all that's left of a deleted request: a column update that landed after the delete brings the row
+    // back holding only its key and that column:
+    @Transient
+    public boolean isPartial() {
+        return approvalDeadline == null || eventDate == null || timeCreated == null;
+    }
 }
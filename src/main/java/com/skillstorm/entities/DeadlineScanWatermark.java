@@ -0,0 +1,27 @@
+package com.skillstorm.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.cassandra.core.cql.PrimaryKeyType;
+import org.springframework.data.cassandra.core.mapping.Column;
+import org.springframework.data.cassandra.core.mapping.PrimaryKeyColumn;
+import org.springframework.data.cassandra.core.mapping.Table;
+
+import java.time.LocalDateTime;
+
+// How far the sweep of each deadline index shard has got, so whichever node takes the shard over carries on from there
+// rather than from around when it started. Kept apart from the shard's lease, which lapses and is deleted as the shard
+// changes hands:
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table("deadline_scan_watermark")
+public class DeadlineScanWatermark {
+
+    @PrimaryKeyColumn(name = "shard", ordinal = 0, type = PrimaryKeyType.PARTITIONED)
+    private int shard;
+
+    @Column("scanned_until")
+    private LocalDateTime scannedUntil;
+}
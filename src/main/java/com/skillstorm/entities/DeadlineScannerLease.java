@@ -0,0 +1,20 @@
+package com.skillstorm.entities;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.cassandra.core.cql.PrimaryKeyType;
+import org.springframework.data.cassandra.core.mapping.PrimaryKeyColumn;
+import org.springframework.data.cassandra.core.mapping.Table;
+
+// Which node currently scans each deadline index shard. Rows are only ever written with lightweight transactions and a
+// TTL, so a lease held by a node that has gone away lapses on its own:
+@Data
+@NoArgsConstructor
+@Table("deadline_scanner_lease")
+public class DeadlineScannerLease {
+
+    @PrimaryKeyColumn(name = "shard", ordinal = 0, type = PrimaryKeyType.PARTITIONED)
+    private int shard;
+
+    private String owner;
+}
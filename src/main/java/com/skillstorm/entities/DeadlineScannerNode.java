@@ -0,0 +1,21 @@
+package com.skillstorm.entities;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.cassandra.core.cql.PrimaryKeyType;
+import org.springframework.data.cassandra.core.mapping.PrimaryKeyColumn;
+import org.springframework.data.cassandra.core.mapping.Table;
+
+// Nodes taking part in deadline scanning, kept alive by heartbeats written with a TTL. The number of live rows decides how
+// many shards each node should own:
+@Data
+@NoArgsConstructor
+@Table("deadline_scanner_node")
+public class DeadlineScannerNode {
+
+    @PrimaryKeyColumn(name = "scanner_group", ordinal = 0, type = PrimaryKeyType.PARTITIONED)
+    private String scannerGroup;
+
+    @PrimaryKeyColumn(name = "node_id", ordinal = 1, type = PrimaryKeyType.CLUSTERED)
+    private String nodeId;
+}
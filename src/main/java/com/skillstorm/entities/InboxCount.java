@@ -0,0 +1,32 @@
+package com.skillstorm.entities;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.cassandra.core.cql.PrimaryKeyType;
+import org.springframework.data.cassandra.core.mapping.CassandraType;
+import org.springframework.data.cassandra.core.mapping.PrimaryKeyColumn;
+import org.springframework.data.cassandra.core.mapping.Table;
+
+import java.time.LocalDate;
+
+// Counts of the requests in each user's inbox, split by event date. Whether a request is urgent depends on how far away its
+// event is, which changes from one day to the next, so rather than counting urgent requests directly we count requests per
+// event date and add up the ones before the cutoff when reading. A user's whole partition is only as many rows as they
+// have distinct event dates pending:
+@Data
+@NoArgsConstructor
+@Table("inbox_count")
+public class InboxCount {
+
+    @PrimaryKeyColumn(name = "username", ordinal = 0, type = PrimaryKeyType.PARTITIONED)
+    private String username;
+
+    @PrimaryKeyColumn(name = "event_date", ordinal = 1, type = PrimaryKeyType.CLUSTERED)
+    private LocalDate eventDate;
+
+    @CassandraType(type = CassandraType.Name.COUNTER)
+    private long total;
+
+    @CassandraType(type = CassandraType.Name.COUNTER)
+    private long unread;
+}
@@ -0,0 +1,34 @@
+package com.skillstorm.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.cassandra.core.cql.PrimaryKeyType;
+import org.springframework.data.cassandra.core.mapping.Column;
+import org.springframework.data.cassandra.core.mapping.PrimaryKeyColumn;
+import org.springframework.data.cassandra.core.mapping.Table;
+
+import java.time.Instant;
+
+// The sequence number of the last record handled on each shard, so a consumer can pick up where it left off after a restart
+// or deploy. Checkpoints are kept under a configured consumer name rather than anything about the node, so a replacement
+// node with a new hostname carries on from them. Rows are written with a TTL, so those of shards nobody reads any more, or
+// of names no longer in use, go away on their own:
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table("kinesis_checkpoint")
+public class KinesisCheckpoint {
+
+    @PrimaryKeyColumn(name = "consumer_name", ordinal = 0, type = PrimaryKeyType.PARTITIONED)
+    private String consumerName;
+
+    @PrimaryKeyColumn(name = "shard_id", ordinal = 1, type = PrimaryKeyType.CLUSTERED)
+    private String shardId;
+
+    @Column("sequence_number")
+    private String sequenceNumber;
+
+    @Column("updated_at")
+    private Instant updatedAt;
+}
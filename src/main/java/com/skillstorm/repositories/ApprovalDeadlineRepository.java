@@ -0,0 +1,17 @@
+package com.skillstorm.repositories;
+
+import com.skillstorm.entities.ApprovalDeadline;
+import org.springframework.data.cassandra.repository.Query;
+import org.springframework.data.cassandra.repository.ReactiveCassandraRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface ApprovalDeadlineRepository extends ReactiveCassandraRepository<ApprovalDeadline, String> {
+
+    // Find all deadlines in a single bucket shard that fall within [from, to):
+    @Query("SELECT * FROM approval_deadline_by_bucket WHERE bucket = ?0 AND shard = ?1 AND approval_deadline >= ?2 AND approval_deadline < ?3")
+    Flux<ApprovalDeadline> findAllByBucketAndShardBetween(LocalDateTime bucket, int shard, LocalDateTime from, LocalDateTime to);
+}
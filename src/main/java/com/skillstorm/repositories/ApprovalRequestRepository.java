@@ -4,15 +4,18 @@ import com.datastax.oss.driver.api.core.data.TupleValue;
 import com.skillstorm.entities.ApprovalRequest;
 import org.springframework.data.cassandra.repository.Query;
 import org.springframework.data.cassandra.repository.ReactiveCassandraRepository;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.time.LocalDateTime;
+import java.util.List;
 import java.util.UUID;
 
 @Repository
-public interface ApprovalRequestRepository extends ReactiveCassandraRepository<ApprovalRequest, String> {
+public interface ApprovalRequestRepository extends ReactiveCassandraRepository<ApprovalRequest, String>,
+        ApprovalRequestRepositoryCustom {
 
     // Find by username and formId:
     @Query("SELECT * FROM approval_request WHERE username = ?0 AND form_id = ?1")
@@ -26,7 +29,20 @@ public interface ApprovalRequestRepository extends ReactiveCassandraRepository<A
     @Query("SELECT * FROM approval_request WHERE username = ?0")
     Flux<ApprovalRequest> findAllByUsername(String username);
 
-    // Find all ApprovalRequests whose deadlines have passed:
-    @Query("SELECT * FROM approval_request WHERE approval_deadline < ?0 ALLOW FILTERING")
-    Flux<ApprovalRequest> findAllRequestsWithExpiredDeadlines(LocalDateTime deadline);
+    // Find one page of the entries for a given username, continuing from the paging state in the pageable if it has one:
+    @Query("SELECT * FROM approval_request WHERE username = ?0")
+    Mono<Slice<ApprovalRequest>> findAllByUsername(String username, Pageable pageable);
+
+    // Find one page of all entries:
+    @Query("SELECT * FROM approval_request")
+    Mono<Slice<ApprovalRequest>> findAll(Pageable pageable);
+
+    // Record that an entry has been sent for auto-approval. An UPDATE creates the row if it isn't there, so this only
+    // applies if the entry hasn't been deleted in the meantime, and emits whether it did:
+    @Query("UPDATE approval_request SET dispatched = true WHERE username = ?0 AND form_id = ?1 IF EXISTS")
+    Mono<Boolean> markDispatched(String username, UUID formId);
+
+    // Find several entries in one user's partition:
+    @Query("SELECT * FROM approval_request WHERE username = ?0 AND form_id IN ?1")
+    Flux<ApprovalRequest> findAllByUsernameAndFormIdIn(String username, List<UUID> formIds);
 }
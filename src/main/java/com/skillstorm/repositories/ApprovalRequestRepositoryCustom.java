@@ -0,0 +1,15 @@
+package com.skillstorm.repositories;
+
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.UUID;
+
+// Queries on approval_request that can't be written as a single @Query:
+public interface ApprovalRequestRepositoryCustom {
+
+    // Mark entries in one user's partition as viewed, writing nothing but that column, as one conditional batch. Only
+    // entries that are still there and still unread are changed, so this never brings back a deleted entry. Emits the form
+    // ids it changed:
+    Mono<List<UUID>> markViewed(String username, List<UUID> formIds);
+}
@@ -0,0 +1,56 @@
+package com.skillstorm.repositories;
+
+import com.datastax.oss.driver.api.core.cql.BatchStatement;
+import com.datastax.oss.driver.api.core.cql.BatchStatementBuilder;
+import com.datastax.oss.driver.api.core.cql.BatchType;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.cassandra.core.ReactiveCassandraOperations;
+import org.springframework.data.cassandra.core.cql.ReactiveCqlOperations;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.UUID;
+
+public class ApprovalRequestRepositoryCustomImpl implements ApprovalRequestRepositoryCustom {
+
+    private static final String MARK_VIEWED =
+            "UPDATE approval_request SET viewed = true WHERE username = ? AND form_id = ? IF viewed = false";
+
+    private final ReactiveCqlOperations cqlOperations;
+
+    @Autowired
+    public ApprovalRequestRepositoryCustomImpl(ReactiveCassandraOperations cassandraOperations) {
+        this.cqlOperations = cassandraOperations.getReactiveCqlOperations();
+    }
+
+    // A conditional batch on one partition applies all or nothing. When it doesn't apply, Cassandra sends back the current
+    // viewed value of each entry that's still there, so the batch is tried again with just the ones still unread. Entries
+    // that have gone, or were already read, drop out each time, so this ends once one applies or none are left:
+    @Override
+    public Mono<List<UUID>> markViewed(String username, List<UUID> formIds) {
+        if(formIds.isEmpty()) {
+            return Mono.just(List.of());
+        }
+        BatchStatementBuilder batch = BatchStatement.builder(BatchType.UNLOGGED);
+        formIds.forEach(formId -> batch.addStatement(SimpleStatement.newInstance(MARK_VIEWED, username, formId)));
+
+        return cqlOperations.queryForRows(batch.build())
+                .collectList()
+                .flatMap(rows -> {
+                    if(!rows.isEmpty() && rows.get(0).getBoolean("[applied]")) {
+                        return Mono.just(formIds);
+                    }
+                    List<UUID> unread = rows.stream()
+                            .filter(row -> !row.isNull("viewed") && !row.getBoolean("viewed"))
+                            .map(row -> row.getUuid("form_id"))
+                            .filter(formIds::contains)
+                            .distinct()
+                            .toList();
+                    if(unread.size() == formIds.size()) {
+                        return Mono.error(new IllegalStateException("Conditional viewed batch for " + username + " was not applied"));
+                    }
+                    return markViewed(username, unread);
+                });
+    }
+}
@@ -0,0 +1,15 @@
+package com.skillstorm.repositories;
+
+import com.skillstorm.entities.DeadlineScanWatermark;
+import org.springframework.data.cassandra.repository.Query;
+import org.springframework.data.cassandra.repository.ReactiveCassandraRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+@Repository
+public interface DeadlineScanWatermarkRepository extends ReactiveCassandraRepository<DeadlineScanWatermark, String> {
+
+    // Find how far a shard has been swept:
+    @Query("SELECT * FROM deadline_scan_watermark WHERE shard = ?0")
+    Mono<DeadlineScanWatermark> findByShard(int shard);
+}
@@ -0,0 +1,22 @@
+package com.skillstorm.repositories;
+
+import com.skillstorm.entities.InboxCount;
+import org.springframework.data.cassandra.repository.Query;
+import org.springframework.data.cassandra.repository.ReactiveCassandraRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+
+@Repository
+public interface InboxCountRepository extends ReactiveCassandraRepository<InboxCount, String> {
+
+    // Find every event date's counts for a user:
+    @Query("SELECT * FROM inbox_count WHERE username = ?0")
+    Flux<InboxCount> findAllByUsername(String username);
+
+    // Adjust the counts for one of a user's event dates. Counters can only be changed by increments, never written outright:
+    @Query("UPDATE inbox_count SET total = total + ?2, unread = unread + ?3 WHERE username = ?0 AND event_date = ?1")
+    Mono<Void> increment(String username, LocalDate eventDate, long total, long unread);
+}
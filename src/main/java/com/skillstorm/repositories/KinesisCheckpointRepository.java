@@ -0,0 +1,15 @@
+package com.skillstorm.repositories;
+
+import com.skillstorm.entities.KinesisCheckpoint;
+import org.springframework.data.cassandra.repository.Query;
+import org.springframework.data.cassandra.repository.ReactiveCassandraRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+@Repository
+public interface KinesisCheckpointRepository extends ReactiveCassandraRepository<KinesisCheckpoint, String> {
+
+    // Find every shard checkpoint for a consumer:
+    @Query("SELECT * FROM kinesis_checkpoint WHERE consumer_name = ?0")
+    Flux<KinesisCheckpoint> findAllByConsumerName(String consumerName);
+}
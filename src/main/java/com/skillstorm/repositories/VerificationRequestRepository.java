@@ -1,9 +1,15 @@
 package com.skillstorm.repositories;
 
 import com.skillstorm.entities.VerificationRequest;
+import org.springframework.data.cassandra.repository.Query;
 import org.springframework.data.cassandra.repository.ReactiveCassandraRepository;
 import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
 
 @Repository
 public interface VerificationRequestRepository extends ReactiveCassandraRepository<VerificationRequest, String> {
+
+    // Find all entries for a given username:
+    @Query("SELECT * FROM verification_request WHERE username = ?0")
+    Flux<VerificationRequest> findAllByUsername(String username);
 }
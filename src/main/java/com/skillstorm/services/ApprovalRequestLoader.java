@@ -0,0 +1,55 @@
+package com.skillstorm.services;
+
+import com.github.benmanes.caffeine.cache.AsyncCacheLoader;
+import com.skillstorm.dtos.ApprovalRequestDto;
+import com.skillstorm.repositories.ApprovalRequestRepository;
+import com.skillstorm.utils.MessageKey;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+// Loads messages into the message cache straight from the reactive repository, without hopping onto another thread.
+// Bulk loads are grouped by user so all the misses in one user's partition become a single IN query. Like inbox loads, they
+// first write any of the user's read marks still waiting in the ViewedWriter:
+@Component
+public class ApprovalRequestLoader implements AsyncCacheLoader<MessageKey, ApprovalRequestDto> {
+
+    private final ApprovalRequestRepository approvalRequestRepository;
+    private final ViewedWriter viewedWriter;
+
+    @Autowired
+    public ApprovalRequestLoader(ApprovalRequestRepository approvalRequestRepository, ViewedWriter viewedWriter) {
+        this.approvalRequestRepository = approvalRequestRepository;
+        this.viewedWriter = viewedWriter;
+    }
+
+    // An empty result completes with null, which the cache treats as absent:
+    @Override
+    public CompletableFuture<ApprovalRequestDto> asyncLoad(MessageKey key, Executor executor) {
+        return viewedWriter.flush(key.username())
+                .then(approvalRequestRepository.findByUsernameAndFormId(key.username(), key.formId()))
+                .filter(approvalRequest -> !approvalRequest.isPartial())
+                .map(ApprovalRequestDto::new)
+                .toFuture();
+    }
+
+    // Keys missing from the result are treated as absent:
+    @Override
+    public CompletableFuture<Map<MessageKey, ApprovalRequestDto>> asyncLoadAll(Set<? extends MessageKey> keys, Executor executor) {
+        return Flux.fromIterable(keys)
+                .groupBy(MessageKey::username)
+                .flatMap(user -> user.map(MessageKey::formId)
+                        .collectList()
+                        .flatMapMany(formIds -> viewedWriter.flush(user.key())
+                                .thenMany(approvalRequestRepository.findAllByUsernameAndFormIdIn(user.key(), formIds))))
+                .filter(approvalRequest -> !approvalRequest.isPartial())
+                .map(ApprovalRequestDto::new)
+                .collectMap(approvalRequest -> new MessageKey(approvalRequest.getUsername(), approvalRequest.getFormId()))
+                .toFuture();
+    }
+}
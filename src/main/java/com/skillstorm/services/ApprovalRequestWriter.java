@@ -0,0 +1,77 @@
+package com.skillstorm.services;
+
+import com.datastax.oss.driver.api.core.cql.BatchType;
+import com.skillstorm.entities.ApprovalDeadline;
+import com.skillstorm.entities.ApprovalRequest;
+import com.skillstorm.utils.MicroBatcher;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.cassandra.core.ReactiveCassandraOperations;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// Writes incoming approval requests, along with their deadline index entries, in micro-batches. Requests that arrive
+// close together are grouped by partition and each partition is written as one unlogged batch, so a burst of submissions
+// costs a round trip per partition instead of two per request. Unlogged batches confined to a single partition are applied
+// atomically by the replica that owns it, without the batch log a multi-partition batch would need. Amazon Keyspaces
+// rejects batches of more than 30 statements, so a partition with more requests than that is written in several.
+@Component
+public class ApprovalRequestWriter {
+
+    private static final int MAX_STATEMENTS_PER_BATCH = 30;
+
+    private final ReactiveCassandraOperations cassandraOperations;
+    private final MicroBatcher<ApprovalRequest> batcher;
+
+    @Autowired
+    public ApprovalRequestWriter(ReactiveCassandraOperations cassandraOperations,
+                                 @Value("${cassandra.write-batch.max-size:50}") int maxBatchSize,
+                                 @Value("${cassandra.write-batch.max-delay-millis:10}") long maxDelayMillis,
+                                 @Value("${cassandra.write-batch.max-concurrent-flushes:4}") int maxConcurrentFlushes) {
+        this.cassandraOperations = cassandraOperations;
+        this.batcher = new MicroBatcher<>(maxBatchSize, Duration.ofMillis(maxDelayMillis), maxConcurrentFlushes, this::write);
+    }
+
+    // Completes once the batch holding this request has been written, or fails if it couldn't be:
+    public Mono<Void> save(ApprovalRequest approvalRequest) {
+        return batcher.submit(approvalRequest);
+    }
+
+    // Requests are partitioned by username and deadlines by bucket and shard, so the two tables are grouped separately:
+    private Mono<Void> write(List<ApprovalRequest> approvalRequests) {
+        Collection<List<ApprovalRequest>> requestPartitions = approvalRequests.stream()
+                .collect(Collectors.groupingBy(ApprovalRequest::getUsername))
+                .values();
+        Collection<List<ApprovalDeadline>> deadlinePartitions = approvalRequests.stream()
+                .map(ApprovalDeadline::new)
+                .collect(Collectors.groupingBy(deadline -> List.of(deadline.getBucket(), deadline.getShard())))
+                .values();
+
+        return Flux.concat(Flux.fromIterable(requestPartitions), Flux.fromIterable(deadlinePartitions))
+                .flatMap(partition -> Flux.fromIterable(partition).buffer(MAX_STATEMENTS_PER_BATCH))
+                .flatMap(this::writePartition)
+                .then();
+    }
+
+    private Mono<Void> writePartition(List<?> entities) {
+        if(entities.size() == 1) {
+            return cassandraOperations.insert(entities.get(0)).then();
+        }
+        return cassandraOperations.batchOps(BatchType.UNLOGGED)
+                .insert(entities)
+                .execute()
+                .then();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        batcher.shutdown();
+    }
+}
@@ -0,0 +1,116 @@
+package com.skillstorm.services;
+
+import com.skillstorm.constants.Queues;
+import com.skillstorm.dtos.ApprovalRequestDto;
+import com.skillstorm.entities.ApprovalRequest;
+import com.skillstorm.repositories.ApprovalRequestRepository;
+import com.skillstorm.utils.MicroBatcher;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+// Sends expired approval requests to Form-Service for auto-approval. Requests are collected into batches and published
+// together on a worker thread, since RabbitTemplate blocks, and the broker's publisher confirms are awaited asynchronously.
+// Only the messages that weren't confirmed are published again. Once a request is confirmed it's marked as dispatched so it
+// isn't sent a second time, and every message carries the form id as its message id so Form-Service can drop duplicates
+// if one does get through, for example when we crash between the confirm and the update.
+@Slf4j
+@Component
+public class AutoApprovalDispatcher {
+
+    private final RabbitTemplate rabbitTemplate;
+    private final ApprovalRequestRepository approvalRequestRepository;
+    private final Duration confirmTimeout;
+    private final int maxAttempts;
+    private final MicroBatcher<ApprovalRequest> batcher;
+
+    @Autowired
+    public AutoApprovalDispatcher(RabbitTemplate rabbitTemplate, ApprovalRequestRepository approvalRequestRepository,
+                                  @Value("${auto-approval.batch.max-size:100}") int maxBatchSize,
+                                  @Value("${auto-approval.batch.max-delay-millis:50}") long maxDelayMillis,
+                                  @Value("${auto-approval.confirm-timeout-millis:5000}") long confirmTimeoutMillis,
+                                  @Value("${auto-approval.max-attempts:3}") int maxAttempts) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.approvalRequestRepository = approvalRequestRepository;
+        this.confirmTimeout = Duration.ofMillis(confirmTimeoutMillis);
+        this.maxAttempts = maxAttempts;
+        this.batcher = new MicroBatcher<>(maxBatchSize, Duration.ofMillis(maxDelayMillis), 1, this::publish);
+    }
+
+    // Completes once the request has been confirmed by the broker and marked as dispatched. Requests that were already
+    // dispatched are skipped, and one deleted while it was being sent is left deleted:
+    public Mono<Void> dispatch(ApprovalRequest approvalRequest) {
+        if(approvalRequest.isDispatched()) {
+            return Mono.empty();
+        }
+        return batcher.submit(approvalRequest)
+                .then(approvalRequestRepository.markDispatched(approvalRequest.getUsername(), approvalRequest.getFormId()))
+                .then();
+    }
+
+    private Mono<Void> publish(List<ApprovalRequest> approvalRequests) {
+        return publish(approvalRequests, 1);
+    }
+
+    // Publish the whole batch, then wait for every confirm. Anything nacked, returned as unroutable or not confirmed in
+    // time is published again:
+    private Mono<Void> publish(List<ApprovalRequest> approvalRequests, int attempt) {
+        return Mono.fromCallable(() -> send(approvalRequests, attempt))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(Flux::fromIterable)
+                .flatMap(pending -> Mono.fromFuture(pending.correlation().getFuture())
+                        .timeout(confirmTimeout)
+                        .map(confirm -> confirm.isAck() && pending.correlation().getReturned() == null)
+                        .onErrorReturn(false)
+                        .filter(confirmed -> !confirmed)
+                        .map(unconfirmed -> pending.approvalRequest()))
+                .collectList()
+                .flatMap(unconfirmed -> {
+                    if(unconfirmed.isEmpty()) {
+                        return Mono.empty();
+                    }
+                    if(attempt >= maxAttempts) {
+                        return Mono.error(new RuntimeException(unconfirmed.size() + " auto-approval messages were not confirmed after " + attempt + " attempts"));
+                    }
+                    log.warn("{} of {} auto-approval messages were not confirmed, retrying", unconfirmed.size(), approvalRequests.size());
+                    return publish(unconfirmed, attempt + 1);
+                });
+    }
+
+    private record Pending(ApprovalRequest approvalRequest, CorrelationData correlation) {
+    }
+
+    // Blocking: hand each message to the broker with its own correlation so its confirm can be tracked:
+    private List<Pending> send(List<ApprovalRequest> approvalRequests, int attempt) {
+        List<Pending> pending = new ArrayList<>(approvalRequests.size());
+        for(ApprovalRequest approvalRequest : approvalRequests) {
+            CorrelationData correlation = new CorrelationData(approvalRequest.getFormId() + ":" + attempt);
+            try {
+                rabbitTemplate.convertAndSend("", Queues.AUTO_APPROVAL.toString(), new ApprovalRequestDto(approvalRequest), message -> {
+                    message.getMessageProperties().setMessageId(approvalRequest.getFormId().toString());
+                    return message;
+                }, correlation);
+            } catch (Exception e) {
+                correlation.getFuture().completeExceptionally(e);
+            }
+            pending.add(new Pending(approvalRequest, correlation));
+        }
+        return pending;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        batcher.shutdown();
+    }
+}
@@ -0,0 +1,69 @@
+package com.skillstorm.services;
+
+import com.skillstorm.entities.ApprovalDeadline;
+import com.skillstorm.repositories.ApprovalDeadlineRepository;
+import com.skillstorm.repositories.ApprovalRequestRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicLong;
+
+// One-off backfill of the deadline index for requests stored before it existed. Those requests have no index entry, so
+// neither the timing wheel nor the sweep will ever find them. Reads through the whole of approval_request a page at a
+// time as the driver fetches it. Requests whose deadline has already passed are submitted for auto-approval straight
+// away, since the sweep never looks back that far, and the rest get their index entry. Requests already dispatched, and
+// partial rows, are skipped.
+//
+// Turned on with deadlines.backfill.enabled on one instance for the first deploy after the index was added. Running it
+// again is harmless: index entries are keyed by the request, and dispatching skips requests already marked as dispatched.
+@Slf4j
+@Component
+public class DeadlineBackfill {
+
+    private final ApprovalRequestRepository approvalRequestRepository;
+    private final ApprovalDeadlineRepository approvalDeadlineRepository;
+    private final AutoApprovalDispatcher autoApprovalDispatcher;
+    private final boolean enabled;
+    private final int concurrency;
+
+    @Autowired
+    public DeadlineBackfill(ApprovalRequestRepository approvalRequestRepository, ApprovalDeadlineRepository approvalDeadlineRepository,
+                            AutoApprovalDispatcher autoApprovalDispatcher,
+                            @Value("${deadlines.backfill.enabled:false}") boolean enabled,
+                            @Value("${deadlines.backfill.concurrency:16}") int concurrency) {
+        this.approvalRequestRepository = approvalRequestRepository;
+        this.approvalDeadlineRepository = approvalDeadlineRepository;
+        this.autoApprovalDispatcher = autoApprovalDispatcher;
+        this.enabled = enabled;
+        this.concurrency = concurrency;
+    }
+
+    @PostConstruct
+    private void start() {
+        if(enabled) {
+            backfill().subscribe(null, e -> log.error("Deadline index backfill failed", e));
+        }
+    }
+
+    public Mono<Void> backfill() {
+        LocalDateTime now = LocalDateTime.now();
+        AtomicLong indexed = new AtomicLong();
+        AtomicLong dispatched = new AtomicLong();
+        log.info("Backfilling the deadline index");
+        return approvalRequestRepository.findAll()
+                .filter(approvalRequest -> !approvalRequest.isPartial() && !approvalRequest.isDispatched())
+                .flatMap(approvalRequest -> approvalRequest.getApprovalDeadline().isBefore(now)
+                        ? autoApprovalDispatcher.dispatch(approvalRequest)
+                                .doOnSuccess(done -> dispatched.incrementAndGet())
+                        : approvalDeadlineRepository.save(new ApprovalDeadline(approvalRequest))
+                                .doOnSuccess(saved -> indexed.incrementAndGet())
+                                .then(), concurrency)
+                .then(Mono.fromRunnable(() -> log.info("Deadline index backfill done: {} entries written, {} expired requests dispatched",
+                        indexed.get(), dispatched.get())));
+    }
+}
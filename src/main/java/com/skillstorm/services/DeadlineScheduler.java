@@ -0,0 +1,92 @@
+package com.skillstorm.services;
+
+import com.skillstorm.entities.ApprovalDeadline;
+import com.skillstorm.utils.MessageKey;
+import com.skillstorm.utils.TimingWheel;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+// Fires approval deadlines from an in-memory timing wheel so requests are submitted for auto-approval as soon as their
+// deadline passes rather than on the next scan. The wheel exists from construction, so deadlines can be registered before
+// it's started, or after it's stopped; they fire once it's running, or are left to the sweep if it never does again:
+@Slf4j
+@Component
+public class DeadlineScheduler {
+
+    // Pending timeouts by message so they can be cancelled when a request leaves the inbox:
+    private final Map<MessageKey, TimingWheel<ApprovalDeadline>.Timeout> timeouts = new ConcurrentHashMap<>();
+
+    private final TimingWheel<ApprovalDeadline> wheel;
+
+    // Set once, when the wheel is started, before anything can expire:
+    private volatile Function<ApprovalDeadline, Mono<Void>> onDeadline;
+
+    @Autowired
+    public DeadlineScheduler(@Value("${deadlines.wheel.tick-millis:10}") long tickMillis, @Value("${deadlines.wheel.size:512}") int wheelSize) {
+        this.wheel = new TimingWheel<>("approval-deadlines", Duration.ofMillis(tickMillis), wheelSize, this::expired);
+    }
+
+    // Start the wheel. Expired deadlines are handed to the given handler on the wheel's thread, so it should only assemble
+    // its pipeline rather than block:
+    public void start(Function<ApprovalDeadline, Mono<Void>> onDeadline) {
+        this.onDeadline = onDeadline;
+        wheel.start();
+    }
+
+    // A deadline that fails to be submitted stays in the index, so the sweep picks it up again:
+    private void expired(ApprovalDeadline deadline) {
+        // Only forget the timeout if it hasn't since been replaced by a newer one for the same message:
+        timeouts.computeIfPresent(keyOf(deadline), (key, timeout) -> timeout.getTask() == deadline ? null : timeout);
+        Mono.defer(() -> onDeadline.apply(deadline))
+                .subscribe(null, e -> log.warn("Failed to submit expired deadline for {}, form {}", deadline.getUsername(),
+                        deadline.getFormId(), e));
+    }
+
+    // Register a deadline, replacing any existing one for the same message. Deadlines are registered on whichever instance
+    // consumed the request, whether or not it owns the deadline's shard, so they fire on time without the owner having to
+    // hear about them. The owner may also have the deadline in its wheel, if it loaded the shard after the request was
+    // written, or pick it up in a sweep. That's safe: a request already marked as dispatched isn't sent again, and every
+    // auto-approval message carries the form id as its message id, so Form-Service drops the duplicate if two instances
+    // send it at the same time:
+    public void schedule(ApprovalDeadline deadline) {
+        TimingWheel<ApprovalDeadline>.Timeout timeout = wheel.schedule(deadline,
+                deadline.getApprovalDeadline().atZone(ZoneId.systemDefault()).toInstant());
+
+        TimingWheel<ApprovalDeadline>.Timeout previous = timeouts.put(keyOf(deadline), timeout);
+        if(previous != null) {
+            previous.cancel();
+        }
+    }
+
+    public void cancel(String username, UUID formId) {
+        TimingWheel<ApprovalDeadline>.Timeout timeout = timeouts.remove(new MessageKey(username, formId));
+        if(timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    // Number of deadlines currently waiting to fire:
+    public int size() {
+        return wheel.size();
+    }
+
+    private MessageKey keyOf(ApprovalDeadline deadline) {
+        return new MessageKey(deadline.getUsername(), deadline.getFormId());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        wheel.stop();
+    }
+}
@@ -0,0 +1,176 @@
+package com.skillstorm.services;
+
+import com.skillstorm.entities.ApprovalDeadline;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.cassandra.core.ReactiveCassandraOperations;
+import org.springframework.data.cassandra.core.cql.ReactiveCqlOperations;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+
+// Splits the deadline index shards between the live instances of the service so each shard is scanned by exactly one of
+// them. Ownership is a lease per shard in Cassandra, taken and renewed with lightweight transactions and written with a
+// TTL, so the leases of an instance that dies lapse on their own and get picked up by the others.
+//
+// Instances also heartbeat into a membership table. Each one aims to hold its fair share of the shards: it releases any
+// over that share and takes free ones while under it, so ownership rebalances within a few renewal intervals whenever an
+// instance joins or leaves.
+@Slf4j
+@Component
+public class DeadlineShardLeases {
+
+    private static final String SCANNER_GROUP = "approval-deadlines";
+
+    private final ReactiveCqlOperations cqlOperations;
+    private final String nodeId;
+    private final int ttlSeconds;
+    private final Duration renewInterval;
+
+    private final Set<Integer> owned = ConcurrentHashMap.newKeySet();
+
+    private volatile IntConsumer onAcquired = shard -> { };
+    private Disposable renewer;
+
+    @Autowired
+    public DeadlineShardLeases(ReactiveCassandraOperations cassandraOperations,
+                               @Value("${deadlines.leases.node-id:${random.uuid}}") String nodeId,
+                               @Value("${deadlines.leases.ttl-seconds:30}") int ttlSeconds,
+                               @Value("${deadlines.leases.renew-interval-seconds:10}") long renewIntervalSeconds) {
+        this.cqlOperations = cassandraOperations.getReactiveCqlOperations();
+        this.nodeId = nodeId;
+        this.ttlSeconds = ttlSeconds;
+        this.renewInterval = Duration.ofSeconds(renewIntervalSeconds);
+    }
+
+    // Start taking part. The callback runs whenever this instance takes over a shard, so it can load that shard's pending
+    // deadlines:
+    public void start(IntConsumer onAcquired) {
+        this.onAcquired = onAcquired;
+        renewer = Flux.interval(Duration.ZERO, renewInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> rebalance()
+                        .onErrorResume(e -> {
+                            log.warn("Failed to rebalance deadline scanner leases: {}", e.getMessage());
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    // Shards this instance currently owns, in order:
+    public Set<Integer> ownedShards() {
+        return new TreeSet<>(owned);
+    }
+
+    private Mono<Void> rebalance() {
+        return heartbeat()
+                .then(renewAll())
+                .then(liveNodes())
+                .flatMap(nodes -> {
+                    int target = (ApprovalDeadline.SHARDS + nodes - 1) / nodes;
+                    if(owned.size() > target) {
+                        return Flux.fromIterable(new TreeSet<>(owned).descendingSet())
+                                .take(owned.size() - target)
+                                .concatMap(this::release)
+                                .then();
+                    }
+                    return acquire(target - owned.size());
+                });
+    }
+
+    private Mono<Void> heartbeat() {
+        return cqlOperations.execute("INSERT INTO deadline_scanner_node (scanner_group, node_id) VALUES (?, ?) USING TTL ?",
+                        SCANNER_GROUP, nodeId, ttlSeconds)
+                .then();
+    }
+
+    private Mono<Integer> liveNodes() {
+        return cqlOperations.queryForRows("SELECT node_id FROM deadline_scanner_node WHERE scanner_group = ?", SCANNER_GROUP)
+                .count()
+                .map(count -> Math.max(count.intValue(), 1));
+    }
+
+    // Extend every lease we hold. A lease we can't renew may already belong to someone else, so stop scanning it:
+    private Mono<Void> renewAll() {
+        return Flux.fromIterable(new ArrayList<>(owned))
+                .flatMap(shard -> cqlOperations.execute("UPDATE deadline_scanner_lease USING TTL ? SET owner = ? WHERE shard = ? IF owner = ?",
+                                ttlSeconds, nodeId, shard, nodeId)
+                        .onErrorReturn(false)
+                        .doOnNext(renewed -> {
+                            if(!renewed) {
+                                log.info("Lost the lease on deadline shard {}", shard);
+                                owned.remove(shard);
+                            }
+                        }))
+                .then();
+    }
+
+    // Try free shards until we've taken as many as we need. The lease table is read first, with a plain read, and only
+    // shards without a live lease are contended for, so an instance under its share while every shard is held costs one
+    // read per renewal rather than a lightweight transaction per shard. Each instance starts looking at a different shard
+    // so they don't all contend for the same ones:
+    private Mono<Void> acquire(int needed) {
+        if(needed <= 0) {
+            return Mono.empty();
+        }
+        return cqlOperations.queryForRows("SELECT shard FROM deadline_scanner_lease")
+                .map(row -> row.getInt("shard"))
+                .collect(Collectors.toSet())
+                .flatMap(held -> acquire(needed, held));
+    }
+
+    private Mono<Void> acquire(int needed, Set<Integer> held) {
+        int start = Math.floorMod(nodeId.hashCode(), ApprovalDeadline.SHARDS);
+        List<Integer> candidates = new ArrayList<>();
+        for(int i = 0; i < ApprovalDeadline.SHARDS; i++) {
+            int shard = (start + i) % ApprovalDeadline.SHARDS;
+            if(!owned.contains(shard) && !held.contains(shard)) {
+                candidates.add(shard);
+            }
+        }
+
+        return Flux.fromIterable(candidates)
+                .concatMap(shard -> cqlOperations.execute("INSERT INTO deadline_scanner_lease (shard, owner) VALUES (?, ?) IF NOT EXISTS USING TTL ?",
+                                shard, nodeId, ttlSeconds)
+                        .filter(acquired -> acquired)
+                        .doOnNext(acquired -> {
+                            log.info("Acquired the lease on deadline shard {}", shard);
+                            owned.add(shard);
+                            onAcquired.accept(shard);
+                        }))
+                .take(needed)
+                .then();
+    }
+
+    private Mono<Void> release(int shard) {
+        owned.remove(shard);
+        return cqlOperations.execute("DELETE FROM deadline_scanner_lease WHERE shard = ? IF owner = ?", shard, nodeId)
+                .doOnNext(released -> log.info("Released the lease on deadline shard {}", shard))
+                .then();
+    }
+
+    // Hand our shards back straight away rather than making the others wait for the leases to lapse:
+    @PreDestroy
+    public void shutdown() {
+        if(renewer != null) {
+            renewer.dispose();
+        }
+        Flux.fromIterable(new ArrayList<>(owned))
+                .flatMap(this::release)
+                .then(cqlOperations.execute("DELETE FROM deadline_scanner_node WHERE scanner_group = ? AND node_id = ?", SCANNER_GROUP, nodeId))
+                .onErrorResume(e -> Mono.empty())
+                .block(Duration.ofSeconds(5));
+    }
+}
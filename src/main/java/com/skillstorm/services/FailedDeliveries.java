@@ -0,0 +1,71 @@
+package com.skillstorm.services;
+
+import com.rabbitmq.client.Channel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+// Decides what happens to a delivery that couldn't be handled. Each inbound queue dead-letters rejected deliveries to its
+// retry queue, where they wait out rabbit.retry.delay-millis before going back to the inbound queue, so a failure that lasts
+// a while, like Cassandra being down, doesn't turn into a tight redelivery loop. A delivery that has failed
+// rabbit.retry.max-attempts times, or that can never succeed, is moved to the queue's parked queue instead, where it stays
+// until someone looks at it:
+@Slf4j
+@Component
+public class FailedDeliveries {
+
+    private final RabbitTemplate rabbitTemplate;
+    private final int maxAttempts;
+
+    @Autowired
+    public FailedDeliveries(RabbitTemplate rabbitTemplate, @Value("${rabbit.retry.max-attempts:5}") int maxAttempts) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.maxAttempts = maxAttempts;
+    }
+
+    // Where an inbound queue's failed deliveries wait before being retried:
+    public static String retryQueue(String queue) {
+        return queue + ".retry";
+    }
+
+    // Where an inbound queue's deliveries end up once they've been given up on:
+    public static String parkedQueue(String queue) {
+        return queue + ".parked";
+    }
+
+    // Blocking, since parking a delivery publishes it. The delivery is settled either way:
+    public void handle(Message message, Channel channel, Throwable error, boolean retryable) throws IOException {
+        long deliveryTag = message.getMessageProperties().getDeliveryTag();
+        String queue = message.getMessageProperties().getConsumerQueue();
+        int attempt = previousAttempts(message, queue) + 1;
+
+        if(retryable && attempt < maxAttempts) {
+            log.warn("Failed to handle delivery from {} (attempt {} of {}), retrying after a delay", queue, attempt, maxAttempts, error);
+            channel.basicNack(deliveryTag, false, false);
+            return;
+        }
+        log.error("Parking delivery from {} after {} attempts", queue, attempt, error);
+        rabbitTemplate.send("", parkedQueue(queue), message);
+        channel.basicAck(deliveryTag, false);
+    }
+
+    // The broker counts how many times a delivery has been rejected from each queue in its x-death header:
+    private static int previousAttempts(Message message, String queue) {
+        List<Map<String, ?>> deaths = message.getMessageProperties().getXDeathHeader();
+        if(deaths == null) {
+            return 0;
+        }
+        return deaths.stream()
+                .filter(death -> queue.equals(death.get("queue")) && "rejected".equals(death.get("reason")))
+                .mapToInt(death -> ((Number) death.get("count")).intValue())
+                .findFirst()
+                .orElse(0);
+    }
+}
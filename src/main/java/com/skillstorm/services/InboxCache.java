@@ -0,0 +1,202 @@
+package com.skillstorm.services;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.skillstorm.dtos.ApprovalRequestDto;
+import com.skillstorm.dtos.InboxItemDto;
+import com.skillstorm.dtos.VerificationRequestDto;
+import com.skillstorm.repositories.ApprovalRequestRepository;
+import com.skillstorm.repositories.VerificationRequestRepository;
+import com.skillstorm.utils.MessageKey;
+import com.skillstorm.utils.UuidOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+// Read-through cache of each user's inbox. The first read for a user loads their partition from Cassandra; concurrent
+// reads that miss share that one load. After that, writes update the cached inbox in place rather than invalidating it,
+// so an approver refreshing their inbox is served from memory and still sees their own changes. Individual message
+// lookups go through a second cache keyed by message, which writes keep current the same way.
+//
+// Verification requests waiting on the user are cached alongside, in the same way, so the combined inbox can be served
+// from memory too. Inboxes are kept in form id order as Cassandra sorts it, the order a freshly loaded partition is in, so
+// the two kinds can be merged as they're streamed out without sorting either.
+@Component
+public class InboxCache {
+
+    private final AsyncCache<String, Map<UUID, ApprovalRequestDto>> inboxCache;
+    private final AsyncLoadingCache<MessageKey, ApprovalRequestDto> approvalRequestsCache;
+    private final AsyncCache<String, Map<UUID, VerificationRequestDto>> verificationInboxCache;
+    private final ApprovalRequestRepository approvalRequestRepository;
+    private final VerificationRequestRepository verificationRequestRepository;
+    private final ViewedWriter viewedWriter;
+
+    // Combined inbox entries in the order their partitions are stored in:
+    private static final Comparator<InboxItemDto> ITEM_ORDER = Comparator.comparing(InboxItemDto::getFormId, UuidOrder.CASSANDRA);
+
+    @Autowired
+    public InboxCache(AsyncCache<String, Map<UUID, ApprovalRequestDto>> inboxCache, AsyncLoadingCache<MessageKey, ApprovalRequestDto> approvalRequestsCache,
+                      AsyncCache<String, Map<UUID, VerificationRequestDto>> verificationInboxCache, ApprovalRequestRepository approvalRequestRepository,
+                      VerificationRequestRepository verificationRequestRepository, ViewedWriter viewedWriter) {
+        this.inboxCache = inboxCache;
+        this.approvalRequestsCache = approvalRequestsCache;
+        this.verificationInboxCache = verificationInboxCache;
+        this.approvalRequestRepository = approvalRequestRepository;
+        this.verificationRequestRepository = verificationRequestRepository;
+        this.viewedWriter = viewedWriter;
+    }
+
+    // Get a user's inbox, loading it if it isn't cached. Messages they've read but that haven't been written as read yet
+    // are written first, so the load sees them. That's only set up on a miss:
+    public Flux<ApprovalRequestDto> getInbox(String username) {
+        return load(inboxCache, username, Flux.defer(() -> viewedWriter.flush(username)
+                        .thenMany(approvalRequestRepository.findAllByUsername(username))
+                        .filter(approvalRequest -> !approvalRequest.isPartial())
+                        .map(ApprovalRequestDto::new)),
+                ApprovalRequestDto::getFormId)
+                .flatMapIterable(Map::values);
+    }
+
+    // Get the verification requests waiting on a user, loading them if they aren't cached:
+    public Flux<VerificationRequestDto> getVerificationInbox(String username) {
+        return load(verificationInboxCache, username, verificationRequestRepository.findAllByUsername(username)
+                        .map(VerificationRequestDto::new),
+                VerificationRequestDto::getFormId)
+                .flatMapIterable(Map::values);
+    }
+
+    // Get a user's approval and verification requests together. Both are loaded at once if they need to be, and then
+    // merged in form id order:
+    public Flux<InboxItemDto> getCombinedInbox(String username) {
+        return Flux.mergeComparing(ITEM_ORDER,
+                getInbox(username).map(InboxItemDto::new),
+                getVerificationInbox(username).map(InboxItemDto::new));
+    }
+
+    // Stream a user's combined inbox without caching it. Each kind is served from memory if it's cached, otherwise both
+    // partitions are read from Cassandra at the same time. Rows come back from each in form id order, so they're merged as
+    // they arrive and neither is ever held in full:
+    public Flux<InboxItemDto> streamCombinedInbox(String username) {
+        CompletableFuture<Map<UUID, VerificationRequestDto>> verifications = verificationInboxCache.getIfPresent(username);
+        Flux<VerificationRequestDto> verificationRequests = isLoaded(verifications)
+                ? Flux.fromIterable(verifications.join().values())
+                : verificationRequestRepository.findAllByUsername(username).map(VerificationRequestDto::new);
+        return Flux.mergeComparing(ITEM_ORDER,
+                streamInbox(username).map(InboxItemDto::new),
+                verificationRequests.map(InboxItemDto::new));
+    }
+
+    // Stream a user's inbox without caching it. If it's already cached it's served from memory, otherwise straight from
+    // Cassandra as the driver fetches each page, so nothing ever holds the whole inbox:
+    public Flux<ApprovalRequestDto> streamInbox(String username) {
+        CompletableFuture<Map<UUID, ApprovalRequestDto>> inbox = inboxCache.getIfPresent(username);
+        if(isLoaded(inbox)) {
+            return Flux.fromIterable(inbox.join().values());
+        }
+        return viewedWriter.flush(username)
+                .thenMany(approvalRequestRepository.findAllByUsername(username))
+                .filter(approvalRequest -> !approvalRequest.isPartial())
+                .map(ApprovalRequestDto::new);
+    }
+
+    // Get a single message, loading it if it isn't cached:
+    public Mono<ApprovalRequestDto> getMessage(String username, UUID formId) {
+        return Mono.fromFuture(approvalRequestsCache.get(new MessageKey(username, formId)), true);
+    }
+
+    // Get several messages from one user's inbox. Whatever isn't cached is loaded with a single query:
+    public Flux<ApprovalRequestDto> getMessages(String username, Collection<UUID> formIds) {
+        return Mono.fromFuture(approvalRequestsCache.getAll(formIds.stream().map(formId -> new MessageKey(username, formId)).toList()), true)
+                .flatMapIterable(Map::values);
+    }
+
+    // Add or replace a message in the user's cached inbox:
+    public void put(ApprovalRequestDto approvalRequest) {
+        approvalRequestsCache.put(new MessageKey(approvalRequest.getUsername(), approvalRequest.getFormId()),
+                CompletableFuture.completedFuture(approvalRequest));
+        update(inboxCache, approvalRequest.getUsername(), inbox -> inbox.put(approvalRequest.getFormId(), approvalRequest));
+    }
+
+    // Replace a message with its read copy, unless it's been read already. However many callers try this at once, only one
+    // makes the change, and it's told so by being given the copy; the rest get empty. If the message has gone from the cache
+    // meanwhile, the one the caller was given stands in for it:
+    public Mono<ApprovalRequestDto> markViewed(ApprovalRequestDto approvalRequest, UnaryOperator<ApprovalRequestDto> asViewed) {
+        return Mono.fromSupplier(() -> {
+            AtomicReference<ApprovalRequestDto> viewed = new AtomicReference<>();
+            approvalRequestsCache.asMap().compute(new MessageKey(approvalRequest.getUsername(), approvalRequest.getFormId()), (key, future) -> {
+                ApprovalRequestDto current = isLoaded(future) ? future.join() : approvalRequest;
+                if(current.isViewed()) {
+                    return future;
+                }
+                viewed.set(asViewed.apply(current));
+                return CompletableFuture.completedFuture(viewed.get());
+            });
+            if(viewed.get() == null) {
+                return null;
+            }
+            viewedWriter.markViewed(approvalRequest.getUsername(), List.of(viewed.get()));
+            update(inboxCache, approvalRequest.getUsername(), inbox -> inbox.put(approvalRequest.getFormId(), viewed.get()));
+            return viewed.get();
+        });
+    }
+
+    // Add or replace several messages in one user's cached inbox:
+    public void putAll(String username, Collection<ApprovalRequestDto> approvalRequests) {
+        approvalRequests.forEach(approvalRequest -> approvalRequestsCache.put(new MessageKey(username, approvalRequest.getFormId()),
+                CompletableFuture.completedFuture(approvalRequest)));
+        update(inboxCache, username, inbox -> approvalRequests.forEach(approvalRequest -> inbox.put(approvalRequest.getFormId(), approvalRequest)));
+    }
+
+    public void remove(String username, UUID formId) {
+        approvalRequestsCache.synchronous().invalidate(new MessageKey(username, formId));
+        update(inboxCache, username, inbox -> inbox.remove(formId));
+    }
+
+    // Add or replace a verification request in the user's cached inbox:
+    public void putVerification(VerificationRequestDto verificationRequest) {
+        update(verificationInboxCache, verificationRequest.getUsername(),
+                inbox -> inbox.put(verificationRequest.getFormId(), verificationRequest));
+    }
+
+    // The load is shared, so one caller going away mustn't cancel it for everyone else:
+    private static <V> Mono<Map<UUID, V>> load(AsyncCache<String, Map<UUID, V>> cache, String username, Flux<V> rows,
+                                               Function<V, UUID> formId) {
+        CompletableFuture<Map<UUID, V>> inbox = cache.get(username, (key, executor) ->
+                rows.collect(() -> new ConcurrentSkipListMap<UUID, V>(UuidOrder.CASSANDRA), (loaded, row) -> loaded.put(formId.apply(row), row))
+                        .<Map<UUID, V>>map(loaded -> loaded)
+                        .toFuture());
+        return Mono.fromFuture(inbox, true);
+    }
+
+    private static boolean isLoaded(CompletableFuture<?> inbox) {
+        return inbox != null && inbox.isDone() && !inbox.isCompletedExceptionally();
+    }
+
+    // Cached inboxes are concurrent sorted maps changed in place, so a write costs a lookup rather than a copy of the whole
+    // inbox. Changes for a user are made under the cache's lock for them, one at a time, and anyone reading the inbox
+    // meanwhile still gets it in order with each message at most once. If the user's inbox is still loading we can't tell
+    // whether the load will include the change, so drop it and let the next read load it again. Nothing to do if the
+    // user's inbox isn't cached:
+    private static <V> void update(AsyncCache<String, Map<UUID, V>> cache, String username, Consumer<Map<UUID, V>> change) {
+        cache.asMap().computeIfPresent(username, (key, future) -> {
+            if(!isLoaded(future)) {
+                return null;
+            }
+            change.accept(future.join());
+            return future;
+        });
+    }
+}
@@ -0,0 +1,278 @@
+package com.skillstorm.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.skillstorm.dtos.ApprovalRequestDto;
+import com.skillstorm.dtos.InboxCountsDto;
+import com.skillstorm.entities.ApprovalRequest;
+import com.skillstorm.entities.InboxCount;
+import com.skillstorm.repositories.ApprovalRequestRepository;
+import com.skillstorm.repositories.InboxCountRepository;
+import com.skillstorm.utils.SseFrame;
+import com.skillstorm.utils.SubscriberRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+// Unread and urgent counts for each user's inbox, kept up to date as requests are added, read and removed rather than
+// worked out from the inbox each time a badge is shown. The counts live in the inbox_count counter table and are cached
+// per user the same way inboxes are: loaded on first read, then changed in place by each write. Clients can also stream
+// them, and are sent the new counts whenever they change.
+//
+// Counters are incremented, not written, so each change has to be counted exactly once. A request is only counted as added
+// when it wasn't already stored, and only counted as read once the write that marked it actually changed it. Anything that
+// still slips through, such as a failed counter update (which is logged rather than failing the message and having it
+// redelivered), is put right when the counts are next loaded, which recounts the user's inbox.
+@Slf4j
+@Component
+public class InboxCounters {
+
+    // Counts by event date, for one user. Rows are never changed once cached, only replaced:
+    public record Tally(long total, long unread) {
+
+        private static final Tally NONE = new Tally(0, 0);
+
+        private Tally plus(long total, long unread) {
+            return new Tally(this.total + total, this.unread + unread);
+        }
+    }
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final InboxCountRepository inboxCountRepository;
+    private final ApprovalRequestRepository approvalRequestRepository;
+    private final AsyncCache<String, NavigableMap<LocalDate, Tally>> countsCache;
+    private final ObjectMapper objectMapper;
+
+    // Only the latest counts matter, so each connection holds one update at most and a newer one replaces it:
+    private final SubscriberRegistry<SseFrame> subscribers = new SubscriberRegistry<>(1, SubscriberRegistry.OverflowPolicy.DROP_OLDEST, null);
+
+    // Changing a user's cached counts and publishing them happens under their lock stripe, as does registering a new
+    // connection, so a connection can't miss a change made while it's being sent the current counts:
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    @Autowired
+    public InboxCounters(InboxCountRepository inboxCountRepository, ApprovalRequestRepository approvalRequestRepository,
+                         AsyncCache<String, NavigableMap<LocalDate, Tally>> countsCache, ObjectMapper objectMapper) {
+        this.inboxCountRepository = inboxCountRepository;
+        this.approvalRequestRepository = approvalRequestRepository;
+        this.countsCache = countsCache;
+        this.objectMapper = objectMapper;
+        for(int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    // Get a user's counts, loading them if they aren't cached:
+    public Mono<InboxCountsDto> getCounts(String username) {
+        return load(username).map(InboxCounters::summarize);
+    }
+
+    // Stream a user's counts: the current ones, then new ones each time they change:
+    public Flux<SseFrame> streamCounts(String username) {
+        return load(username).flatMapMany(loaded -> subscribers.subscribe(username, lockFor(username),
+                () -> List.of(frame(summarize(current(username, loaded))))));
+    }
+
+    // A new request arrived in the user's inbox:
+    public Mono<Void> added(ApprovalRequestDto approvalRequest) {
+        return change(approvalRequest, 1, approvalRequest.isViewed() ? 0 : 1);
+    }
+
+    // A request already in the user's inbox was stored again, by a redelivery or an update. Only what's different is
+    // counted: a new event date moves it from one date to the other, and coming back unread puts it back on the unread count:
+    public Mono<Void> replaced(ApprovalRequestDto previous, ApprovalRequestDto current) {
+        String username = current.getUsername().toLowerCase();
+        LocalDate before = LocalDate.parse(previous.getEventDate());
+        LocalDate after = LocalDate.parse(current.getEventDate());
+        long unreadBefore = previous.isViewed() ? 0 : 1;
+        long unreadAfter = current.isViewed() ? 0 : 1;
+        if(before.equals(after)) {
+            return unreadBefore == unreadAfter ? Mono.empty() : change(username, after, 0, unreadAfter - unreadBefore);
+        }
+        return change(username, before, -1, -unreadBefore)
+                .then(change(username, after, 1, unreadAfter));
+    }
+
+    // Some of a user's unread requests have been marked as read in Cassandra, given by their event dates. That's one change
+    // per event date among them:
+    public Mono<Void> viewed(String username, Collection<LocalDate> eventDates) {
+        return Flux.fromIterable(eventDates.stream()
+                        .collect(Collectors.groupingBy(eventDate -> eventDate, Collectors.counting()))
+                        .entrySet())
+                .flatMap(date -> change(username, date.getKey(), 0, -date.getValue()))
+                .then();
+    }
+
+    // A request was removed from the user's inbox:
+    public Mono<Void> removed(ApprovalRequestDto approvalRequest) {
+        return change(approvalRequest, -1, approvalRequest.isViewed() ? 0 : -1);
+    }
+
+    // Update the counter table and then the cached counts. Only counts that had finished loading before the counter was
+    // updated can be changed: a load still running, or started since, may already include the change, so those are
+    // dropped instead and the next read loads them again:
+    private Mono<Void> change(ApprovalRequestDto approvalRequest, long total, long unread) {
+        return change(approvalRequest.getUsername().toLowerCase(), LocalDate.parse(approvalRequest.getEventDate()), total, unread);
+    }
+
+    private Mono<Void> change(String username, LocalDate eventDate, long total, long unread) {
+        return Mono.defer(() -> {
+                    CompletableFuture<NavigableMap<LocalDate, Tally>> before = countsCache.getIfPresent(username);
+                    CompletableFuture<?> loadedBefore = isLoaded(before) ? loadOf(before) : null;
+                    return inboxCountRepository.increment(username, eventDate, total, unread)
+                            .then(Mono.fromRunnable(() -> apply(username, eventDate, total, unread, loadedBefore)));
+                })
+                .onErrorResume(e -> {
+                    log.warn("Failed to update inbox counts for {}", username, e);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private void apply(String username, LocalDate eventDate, long total, long unread, CompletableFuture<?> loadedBefore) {
+        synchronized (lockFor(username)) {
+            CompletableFuture<NavigableMap<LocalDate, Tally>> updated = countsCache.asMap().computeIfPresent(username, (key, future) -> {
+                if(loadedBefore == null || !isLoaded(future) || loadOf(future) != loadedBefore) {
+                    return null;
+                }
+                NavigableMap<LocalDate, Tally> counts = new TreeMap<>(future.join());
+                Tally tally = counts.getOrDefault(eventDate, new Tally(0, 0)).plus(total, unread);
+                if(tally.total() == 0 && tally.unread() == 0) {
+                    counts.remove(eventDate);
+                } else {
+                    counts.put(eventDate, tally);
+                }
+                return new Changed(loadedBefore, Collections.unmodifiableNavigableMap(counts));
+            });
+            if(updated != null) {
+                publish(username, updated.join());
+            }
+        }
+        // Connections outlive the cache entry, so if the counts have been evicted (or were dropped above) but someone's
+        // listening, load them again to send them:
+        if(subscribers.hasSubscribers(username) && countsCache.getIfPresent(username) == null) {
+            load(username).subscribe(loaded -> {
+                synchronized (lockFor(username)) {
+                    publish(username, current(username, loaded));
+                }
+            });
+        }
+    }
+
+    // Cached counts that a change has been applied to, remembering which load they started from. Counts straight from a load
+    // are their own load:
+    private static final class Changed extends CompletableFuture<NavigableMap<LocalDate, Tally>> {
+
+        private final CompletableFuture<?> load;
+
+        private Changed(CompletableFuture<?> load, NavigableMap<LocalDate, Tally> counts) {
+            this.load = load;
+            complete(counts);
+        }
+    }
+
+    private static CompletableFuture<?> loadOf(CompletableFuture<?> counts) {
+        return counts instanceof Changed changed ? changed.load : counts;
+    }
+
+    private static boolean isLoaded(CompletableFuture<?> counts) {
+        return counts != null && counts.isDone() && !counts.isCompletedExceptionally();
+    }
+
+    private Mono<NavigableMap<LocalDate, Tally>> load(String username) {
+        CompletableFuture<NavigableMap<LocalDate, Tally>> counts = countsCache.get(username, (key, executor) -> recount(key).toFuture());
+
+        // The load is shared, so one caller going away mustn't cancel it for everyone else:
+        return Mono.fromFuture(counts, true);
+    }
+
+    // Loading counts the user's inbox as well as reading their counters, and moves any counter that doesn't match the inbox
+    // by the difference. Counts are cached from the inbox, so a counter that's drifted is only wrong until the cached
+    // counts next expire. A change made while this runs can be corrected for twice, but it also drops the counts being
+    // loaded, so the next read recounts again:
+    private Mono<NavigableMap<LocalDate, Tally>> recount(String username) {
+        Mono<Map<LocalDate, Tally>> counters = inboxCountRepository.findAllByUsername(username)
+                .collectMap(InboxCount::getEventDate, count -> new Tally(count.getTotal(), count.getUnread()));
+        Mono<NavigableMap<LocalDate, Tally>> inbox = approvalRequestRepository.findAllByUsername(username)
+                .filter(approvalRequest -> !approvalRequest.isPartial())
+                .collect(TreeMap::new, (NavigableMap<LocalDate, Tally> counts, ApprovalRequest approvalRequest) ->
+                        counts.merge(approvalRequest.getEventDate(), new Tally(1, approvalRequest.isViewed() ? 0 : 1),
+                                (tally, one) -> tally.plus(one.total(), one.unread())));
+
+        return Mono.zip(counters, inbox, (counted, actual) -> {
+                    Set<LocalDate> eventDates = new HashSet<>(counted.keySet());
+                    eventDates.addAll(actual.keySet());
+                    return Flux.fromIterable(eventDates)
+                            .flatMap(eventDate -> correct(username, eventDate, counted.getOrDefault(eventDate, Tally.NONE),
+                                    actual.getOrDefault(eventDate, Tally.NONE)))
+                            .then(Mono.just(Collections.unmodifiableNavigableMap(actual)));
+                })
+                .flatMap(corrected -> corrected);
+    }
+
+    private Mono<Void> correct(String username, LocalDate eventDate, Tally counted, Tally actual) {
+        if(counted.equals(actual)) {
+            return Mono.empty();
+        }
+        log.info("Correcting inbox counts for {} on {} from {} to {}", username, eventDate, counted, actual);
+        return inboxCountRepository.increment(username, eventDate, actual.total() - counted.total(), actual.unread() - counted.unread())
+                .onErrorResume(e -> {
+                    log.warn("Failed to correct inbox counts for {}", username, e);
+                    return Mono.empty();
+                });
+    }
+
+    private void publish(String username, NavigableMap<LocalDate, Tally> counts) {
+        if(subscribers.hasSubscribers(username)) {
+            subscribers.publish(username, frame(summarize(counts)));
+        }
+    }
+
+    // The cached counts if they're still there, or the ones just loaded if they've since been evicted:
+    private NavigableMap<LocalDate, Tally> current(String username, NavigableMap<LocalDate, Tally> loaded) {
+        CompletableFuture<NavigableMap<LocalDate, Tally>> cached = countsCache.getIfPresent(username);
+        return isLoaded(cached) ? cached.join() : loaded;
+    }
+
+    // Requests are urgent when their event is less than two weeks away, which is everything before the cutoff:
+    private static InboxCountsDto summarize(NavigableMap<LocalDate, Tally> counts) {
+        long total = 0;
+        long unread = 0;
+        for(Tally tally : counts.values()) {
+            total += tally.total();
+            unread += tally.unread();
+        }
+        long urgent = counts.headMap(LocalDate.now().plusWeeks(2), false).values().stream()
+                .mapToLong(Tally::total)
+                .sum();
+        return new InboxCountsDto(total, unread, urgent);
+    }
+
+    private SseFrame frame(InboxCountsDto counts) {
+        try {
+            return SseFrame.of(null, "counts", objectMapper.writeValueAsBytes(counts));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to serialize inbox counts", e);
+        }
+    }
+
+    private Object lockFor(String username) {
+        return locks[Math.floorMod(username.hashCode(), LOCK_STRIPES)];
+    }
+}
@@ -0,0 +1,122 @@
+package com.skillstorm.services;
+
+import com.datastax.oss.driver.api.core.cql.BatchType;
+import com.skillstorm.entities.KinesisCheckpoint;
+import com.skillstorm.repositories.KinesisCheckpointRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.cassandra.core.InsertOptions;
+import org.springframework.data.cassandra.core.ReactiveCassandraOperations;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Tracks how far the Kinesis consumer has got on each shard. Progress is recorded in memory as records are handled and
+// written to Cassandra periodically, so checkpointing costs one small batch per interval rather than a write per record.
+// After a restart or deploy the consumer resumes from the last checkpoint; at worst it sees the records from one interval
+// again, which is harmless since updates are keyed by form id on the client.
+//
+// Checkpoints are kept under kinesis.checkpoint.consumer-name, which has to be set explicitly. Nodes configured with the
+// same name share checkpoints, so a node that replaces another carries on from where it got to. Each write carries a TTL,
+// so checkpoints that stop being written expire rather than piling up.
+@Slf4j
+@Component
+public class KinesisCheckpointer {
+
+    // Stored in place of a sequence number once a closed shard has been read to the end:
+    public static final String SHARD_END = "SHARD_END";
+
+    private final KinesisCheckpointRepository checkpointRepository;
+    private final ReactiveCassandraOperations cassandraOperations;
+    private final String consumerName;
+    private final Duration interval;
+    private final InsertOptions insertOptions;
+
+    // Latest sequence number handled on each shard that hasn't been written yet:
+    private final Map<String, String> pending = new ConcurrentHashMap<>();
+
+    private Disposable flusher;
+
+    @Autowired
+    public KinesisCheckpointer(KinesisCheckpointRepository checkpointRepository, ReactiveCassandraOperations cassandraOperations,
+                               @Value("${kinesis.checkpoint.consumer-name}") String consumerName,
+                               @Value("${kinesis.checkpoint.interval-millis:5000}") long intervalMillis,
+                               @Value("${kinesis.checkpoint.ttl-hours:168}") long ttlHours) {
+        this.checkpointRepository = checkpointRepository;
+        this.cassandraOperations = cassandraOperations;
+        this.consumerName = consumerName;
+        this.interval = Duration.ofMillis(intervalMillis);
+        this.insertOptions = InsertOptions.builder().ttl(Duration.ofHours(ttlHours)).build();
+    }
+
+    @PostConstruct
+    private void startFlushing() {
+        flusher = Flux.interval(interval)
+                .onBackpressureDrop()
+                .concatMap(tick -> flush()
+                        .onErrorResume(e -> {
+                            log.warn("Failed to write Kinesis checkpoints: {}", e.getMessage());
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    // Last checkpointed sequence number for each shard:
+    public Mono<Map<String, String>> load() {
+        return checkpointRepository.findAllByConsumerName(consumerName)
+                .collectMap(KinesisCheckpoint::getShardId, KinesisCheckpoint::getSequenceNumber);
+    }
+
+    // Record that everything up to and including this sequence number has been handled on the shard:
+    public void update(String shardId, String sequenceNumber) {
+        pending.put(shardId, sequenceNumber);
+    }
+
+    // Write everything recorded since the last flush. All of a consumer's checkpoints live in one partition, so they go out
+    // as a single unlogged batch:
+    public Mono<Void> flush() {
+        List<KinesisCheckpoint> checkpoints = new ArrayList<>();
+        Instant now = Instant.now();
+        pending.forEach((shardId, sequenceNumber) -> {
+            // Only clear the entry if the shard hasn't moved on again in the meantime:
+            if(pending.remove(shardId, sequenceNumber)) {
+                checkpoints.add(new KinesisCheckpoint(consumerName, shardId, sequenceNumber, now));
+            }
+        });
+
+        if(checkpoints.isEmpty()) {
+            return Mono.empty();
+        }
+        return cassandraOperations.batchOps(BatchType.UNLOGGED)
+                .insert(checkpoints, insertOptions)
+                .execute()
+                // Put them back so the next flush tries again, unless newer ones have been recorded since:
+                .doOnError(e -> checkpoints.forEach(checkpoint -> pending.putIfAbsent(checkpoint.getShardId(), checkpoint.getSequenceNumber())))
+                .then();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if(flusher != null) {
+            flusher.dispose();
+        }
+        // Save as much progress as we can on the way down so the next start has less to catch up on:
+        flush()
+                .onErrorResume(e -> {
+                    log.warn("Failed to write final Kinesis checkpoints: {}", e.getMessage());
+                    return Mono.empty();
+                })
+                .block(Duration.ofSeconds(5));
+    }
+}
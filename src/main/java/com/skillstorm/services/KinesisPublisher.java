@@ -0,0 +1,211 @@
+package com.skillstorm.services;
+
+import com.skillstorm.codecs.RecordFraming;
+import com.skillstorm.codecs.WireFormat;
+import com.skillstorm.utils.MicroBatcher;
+import com.skillstorm.utils.ReactiveTimers;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequest;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequestEntry;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Publishes encoded payloads to the Kinesis stream in batches. Payloads submitted close together are buffered, those with
+// the same partition key are aggregated into a single record (see RecordFraming), and the records are sent with PutRecords.
+// When Kinesis rejects some entries of a request (usually for throttling) only those entries are sent again, with backoff.
+//
+// Records in flight, PutRecords latency, per-outcome record counts and the latency of each publish from submission to
+// acceptance are published as 'kinesis.publisher.*' metrics.
+@Slf4j
+@Component
+public class KinesisPublisher {
+
+    // PutRecords limits:
+    private static final int MAX_RECORDS_PER_REQUEST = 500;
+    private static final int MAX_BYTES_PER_REQUEST = 5 * 1024 * 1024;
+
+    private record Payload(String partitionKey, byte[] data) {
+    }
+
+    private final KinesisAsyncClient kinesisClient;
+    private final String streamName;
+    private final int maxAggregateBytes;
+    private final RecordFraming framing;
+    private final int maxAttempts;
+    private final Duration retryBackoff;
+    private final MicroBatcher<Payload> batcher;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Timer putRecordsLatency;
+    private final Counter publishedRecords;
+    private final Counter retriedRecords;
+    private final Counter failedRecords;
+    private final ReactiveTimers.Timing publishLatency;
+
+    @Autowired
+    public KinesisPublisher(KinesisAsyncClient kinesisClient, MeterRegistry meterRegistry, ReactiveTimers timers,
+                            @Value("${kinesis.stream-name}") String streamName,
+                            @Value("${kinesis.publisher.max-batch-size:500}") int maxBatchSize,
+                            @Value("${kinesis.publisher.max-delay-millis:50}") long maxDelayMillis,
+                            @Value("${kinesis.publisher.max-concurrent-flushes:2}") int maxConcurrentFlushes,
+                            @Value("${kinesis.publisher.max-aggregate-bytes:51200}") int maxAggregateBytes,
+                            @Value("${kinesis.publisher.max-attempts:5}") int maxAttempts,
+                            @Value("${kinesis.publisher.retry-backoff-millis:100}") long retryBackoffMillis,
+                            @Value("${kinesis.wire-format:JSON}") WireFormat wireFormat) {
+        this.kinesisClient = kinesisClient;
+        this.streamName = streamName;
+        this.maxAggregateBytes = maxAggregateBytes;
+        this.framing = RecordFraming.of(wireFormat);
+        this.maxAttempts = maxAttempts;
+        this.retryBackoff = Duration.ofMillis(retryBackoffMillis);
+        this.batcher = new MicroBatcher<>(maxBatchSize, Duration.ofMillis(maxDelayMillis), maxConcurrentFlushes, this::flush);
+
+        meterRegistry.gauge("kinesis.publisher.in-flight", inFlight);
+        this.putRecordsLatency = meterRegistry.timer("kinesis.publisher.put-records.latency");
+        this.publishedRecords = meterRegistry.counter("kinesis.publisher.records", "result", "published");
+        this.retriedRecords = meterRegistry.counter("kinesis.publisher.records", "result", "retried");
+        this.failedRecords = meterRegistry.counter("kinesis.publisher.records", "result", "failed");
+        this.publishLatency = timers.timing("kinesis.publisher.publish.latency");
+    }
+
+    // Queue a payload, encoded in the configured wire format, for the next batch. Completes once the record carrying it has
+    // been accepted by Kinesis. Since payloads from different callers share aggregated records, a batch that still isn't
+    // fully accepted after the last attempt fails every caller in it:
+    public Mono<Void> publish(String partitionKey, byte[] payload) {
+        return publishLatency.mono(batcher.submit(new Payload(partitionKey, payload)));
+    }
+
+    private Mono<Void> flush(List<Payload> payloads) {
+        List<PutRecordsRequestEntry> records = aggregate(payloads);
+        List<List<PutRecordsRequestEntry>> requests = new ArrayList<>();
+
+        // Split into requests that stay within the PutRecords limits:
+        List<PutRecordsRequestEntry> current = new ArrayList<>();
+        int currentBytes = 0;
+        for(PutRecordsRequestEntry record : records) {
+            int recordBytes = record.data().asByteArrayUnsafe().length + record.partitionKey().length();
+            if(!current.isEmpty() && (current.size() == MAX_RECORDS_PER_REQUEST || currentBytes + recordBytes > MAX_BYTES_PER_REQUEST)) {
+                requests.add(current);
+                current = new ArrayList<>();
+                currentBytes = 0;
+            }
+            current.add(record);
+            currentBytes += recordBytes;
+        }
+        if(!current.isEmpty()) {
+            requests.add(current);
+        }
+
+        return Flux.fromIterable(requests)
+                .flatMap(request -> putRecords(request, 1))
+                .then();
+    }
+
+    // Pack payloads that share a partition key into records of up to maxAggregateBytes, keeping their order. A payload that
+    // is too big to share a record gets one to itself:
+    private List<PutRecordsRequestEntry> aggregate(List<Payload> payloads) {
+        Map<String, List<byte[]>> byPartitionKey = new LinkedHashMap<>();
+        payloads.forEach(payload -> byPartitionKey.computeIfAbsent(payload.partitionKey(), key -> new ArrayList<>()).add(payload.data()));
+
+        List<PutRecordsRequestEntry> records = new ArrayList<>();
+        byPartitionKey.forEach((partitionKey, data) -> {
+            ByteArrayOutputStream aggregate = new ByteArrayOutputStream();
+            for(byte[] payload : data) {
+                if(aggregate.size() > 0 && aggregate.size() + payload.length + framing.overhead(payload) > maxAggregateBytes) {
+                    records.add(toRecord(partitionKey, aggregate));
+                    aggregate.reset();
+                }
+                framing.append(aggregate, payload);
+            }
+            records.add(toRecord(partitionKey, aggregate));
+        });
+        return records;
+    }
+
+    private PutRecordsRequestEntry toRecord(String partitionKey, ByteArrayOutputStream aggregate) {
+        framing.finish(aggregate);
+        return PutRecordsRequestEntry.builder()
+                .partitionKey(partitionKey)
+                .data(SdkBytes.fromByteArray(aggregate.toByteArray()))
+                .build();
+    }
+
+    // Send the records, then resend whichever ones Kinesis rejected until they're all accepted or we run out of attempts.
+    // If the whole call fails, every record in it counts as rejected:
+    private Mono<Void> putRecords(List<PutRecordsRequestEntry> records, int attempt) {
+        PutRecordsRequest request = PutRecordsRequest.builder()
+                .streamName(streamName)
+                .records(records)
+                .build();
+
+        return Mono.defer(() -> {
+                    inFlight.addAndGet(records.size());
+                    Timer.Sample sample = Timer.start();
+                    return Mono.fromFuture(() -> kinesisClient.putRecords(request))
+                            .doFinally(signal -> {
+                                sample.stop(putRecordsLatency);
+                                inFlight.addAndGet(-records.size());
+                            });
+                })
+                .map(response -> rejected(records, response))
+                .onErrorResume(e -> {
+                    log.warn("PutRecords call with {} records failed: {}", records.size(), e.getMessage());
+                    return Mono.just(records);
+                })
+                .flatMap(rejected -> {
+                    publishedRecords.increment(records.size() - rejected.size());
+                    if(rejected.isEmpty()) {
+                        return Mono.empty();
+                    }
+                    if(attempt >= maxAttempts) {
+                        failedRecords.increment(rejected.size());
+                        return Mono.error(new RuntimeException(rejected.size() + " Kinesis records were still rejected after " + attempt + " attempts"));
+                    }
+                    retriedRecords.increment(rejected.size());
+                    return Mono.delay(retryBackoff.multipliedBy(1L << (attempt - 1)))
+                            .then(putRecords(rejected, attempt + 1));
+                });
+    }
+
+    // Result entries line up with the request entries; the ones carrying an error code were not written:
+    private List<PutRecordsRequestEntry> rejected(List<PutRecordsRequestEntry> records, PutRecordsResponse response) {
+        if(response.failedRecordCount() == null || response.failedRecordCount() == 0) {
+            return List.of();
+        }
+
+        List<PutRecordsRequestEntry> rejected = new ArrayList<>();
+        for(int i = 0; i < records.size(); i++) {
+            if(response.records().get(i).errorCode() != null) {
+                rejected.add(records.get(i));
+            }
+        }
+        return rejected;
+    }
+
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        batcher.shutdown();
+    }
+}
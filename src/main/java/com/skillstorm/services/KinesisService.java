@@ -1,122 +1,115 @@
 package com.skillstorm.services;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.skillstorm.codecs.ApprovalRequestCodecs;
+import com.skillstorm.codecs.PayloadCodec;
+import com.skillstorm.codecs.RecordFraming;
+import com.skillstorm.codecs.WireFormat;
 import com.skillstorm.dtos.ApprovalRequestDto;
-import com.skillstorm.entities.ApprovalRequest;
-import jakarta.annotation.PreDestroy;
+import com.skillstorm.utils.ReactiveTimers;
+import com.skillstorm.utils.SseFrame;
+import com.skillstorm.utils.SubscriberRegistry;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.FluxSink;
-import software.amazon.awssdk.core.SdkBytes;
-import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
-import software.amazon.awssdk.services.kinesis.model.*;
+import reactor.core.publisher.Mono;
+import software.amazon.awssdk.services.kinesis.model.Record;
 
-import java.nio.charset.StandardCharsets;
-import java.util.Map;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 
+@Slf4j
 @Service
 public class KinesisService {
 
-    private final KinesisAsyncClient kinesisClient;
-    private final String streamName;
-    private final String consumerArn;
     private final ObjectMapper mapper;
+    private final ObjectReader approvalRequestReader;
+    private final KinesisPublisher kinesisPublisher;
+    private final ApprovalRequestCodecs codecs;
 
-    // Ensure we're only subscribed to each shard once:
-    private final Map<String, CompletableFuture<Void>> shardSubscriptions = new ConcurrentHashMap<>();
+    // Encoding used for the requests we publish. The consumer accepts either:
+    private final PayloadCodec<ApprovalRequestDto> outboundCodec;
+
+    // Keeps this node subscribed to every shard. Every SSE connection on this node shares these subscriptions:
+    private final ShardSubscriptionManager shardSubscriptionManager;
+
+    // Open SSE connections by username. Records are routed only to the connections for the user they belong to, as frames
+    // shared by all of that user's connections:
+    private final SubscriberRegistry<SseFrame> subscribers = new SubscriberRegistry<>();
+
+    // Time spent decoding and routing each record we have subscribers for:
+    private final ReactiveTimers.Timing routeLatency;
 
     @Autowired
-    public KinesisService(KinesisAsyncClient kinesisClient, @Value("${kinesis.stream-name}") String streamName, @Value("${kinesis.consumer-arn}") String consumerArn, ObjectMapper mapper) {
-        this.kinesisClient = kinesisClient;
-        this.streamName = streamName;
-        this.consumerArn = consumerArn;
+    public KinesisService(ObjectMapper mapper, KinesisPublisher kinesisPublisher, ShardSubscriptionManager shardSubscriptionManager,
+                          ApprovalRequestCodecs codecs, ReactiveTimers timers, @Value("${kinesis.wire-format:JSON}") WireFormat wireFormat) {
         this.mapper = mapper;
+        // The derived urgent property is written out but can't be set, so ignore it when reading requests back:
+        this.approvalRequestReader = mapper.readerFor(ApprovalRequestDto.class).without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        this.kinesisPublisher = kinesisPublisher;
+        this.codecs = codecs;
+        this.outboundCodec = codecs.forFormat(wireFormat);
+        this.shardSubscriptionManager = shardSubscriptionManager;
+        this.routeLatency = timers.timing("kinesis.consumer.route.latency");
     }
 
-    // Load data into the kinesis stream for consumption:
-    public void publishApprovalRequestToKinesis(ApprovalRequest approvalRequest) {
+    // Load data into the kinesis stream for consumption. Records are batched and retried by the publisher, and the
+    // returned Mono completes once this one has been accepted:
+    public Mono<Void> publishApprovalRequestToKinesis(ApprovalRequestDto approvalRequest) {
         try {
-            System.out.println("\nPublishing new message to kinesis: " + approvalRequest.toString());
-            String jsonData = mapper.writeValueAsString(new ApprovalRequestDto(approvalRequest));
-
-            PutRecordRequest putRequest = PutRecordRequest.builder()
-                    .streamName(streamName)
-                    .partitionKey(approvalRequest.getUsername())
-                    .data(SdkBytes.fromUtf8String(jsonData))
-                    .build();
-
-            kinesisClient.putRecord(putRequest);
-
-        } catch ( JsonProcessingException e) {
-            System.err.println("Publish message failed: " + e.getMessage());
-            e.printStackTrace();
+            return kinesisPublisher.publish(approvalRequest.getUsername(), outboundCodec.encode(approvalRequest));
+        } catch (RuntimeException e) {
+            return Mono.error(e);
         }
     }
 
-    private void subscribeToKinesisStream(FluxSink<ApprovalRequestDto> sink) {
-        ListShardsRequest listShardsRequest = ListShardsRequest.builder().streamName(streamName).build();
-        kinesisClient.listShards(listShardsRequest).whenComplete((listShardsResponse, ex) -> {
-            if (ex == null) {
-                System.out.println("\n\nSubscribing to stream");
-                listShardsResponse.shards().forEach(shard -> {
-                    System.out.println("\nIdentified shard: " + shard.toString());
-                    if (!shardSubscriptions.containsKey(shard.shardId())) {
-                        System.out.println("\nAdding shard " + shard.shardId() + " to map");
-                        shardSubscriptions.put(shard.shardId(), subscribeToShard(shard, sink));
-                    }
-                });
+    // Records are partitioned by username, so we can skip decoding anything nobody on this node is listening for. Each
+    // record is decoded and framed once no matter how many connections it goes out to. A record holds either
+    // length-prefixed binary requests, or JSON that is a single request or an array of them. Either way it's decoded
+    // straight from the record's bytes:
+    private void routeRecord(Record record) {
+        String username = record.partitionKey().toLowerCase();
+        if(!subscribers.hasSubscribers(username)) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            ByteBuffer data = ByteBuffer.wrap(record.data().asByteArrayUnsafe());
+            if(RecordFraming.isLengthPrefixed(data)) {
+                RecordFraming.forEachPayload(data, payload -> publish(username, codecs.binary().decode(payload)));
             } else {
-                System.err.println("\n\nError listing shards: " + ex.getMessage());
-                sink.error(ex);
+                routeJson(username, data);
             }
-        });
+            routeLatency.recordSince(start);
+        } catch (Exception e) {
+            log.warn("Failed to decode record {}", record.sequenceNumber(), e);
+        }
     }
 
-    private CompletableFuture<Void> subscribeToShard(Shard shard, FluxSink<ApprovalRequestDto> sink) {
-        System.out.println("\nSubscribing to shard");
-        SubscribeToShardRequest request = SubscribeToShardRequest.builder()
-                .consumerARN(consumerArn)
-                .shardId(shard.shardId())
-                .startingPosition(s -> s.type(ShardIteratorType.LATEST))
-                .build();
-
-        System.out.println("\nCreating response handler");
-        SubscribeToShardResponseHandler responseHandler = SubscribeToShardResponseHandler.builder()
-                .onError(sink::error)
-                .subscriber(event -> {
-                    System.out.println("\nEvent received: " + event.toString());
-                    if (event instanceof SubscribeToShardEvent) {
-                        ((SubscribeToShardEvent) event).records().forEach(record -> {
-                            try {
-                                System.out.println("\nRecord received: " + record.toString());
-                                String jsonData = new String(record.data().asByteArray(), StandardCharsets.UTF_8);
-                                ApprovalRequestDto dto = mapper.readValue(jsonData, ApprovalRequestDto.class);
-                                sink.next(dto);
-                            } catch (Exception e) {
-                                e.printStackTrace();
-                            }
-                        });
-                    }
-                })
-                .build();
-
-        return kinesisClient.subscribeToShard(request, responseHandler);
+    private void routeJson(String username, ByteBuffer data) throws IOException {
+        JsonNode json = mapper.readTree(data.array());
+        if(json.isArray()) {
+            for(JsonNode approvalRequest : json) {
+                publish(username, approvalRequestReader.<ApprovalRequestDto>readValue(approvalRequest));
+            }
+        } else {
+            publish(username, approvalRequestReader.<ApprovalRequestDto>readValue(json));
+        }
     }
 
-    public Flux<ApprovalRequestDto> getUpdatesForUser(String username) {
-        System.out.println("\nKinesis service is getting updates...");
-        return Flux.create(this::subscribeToKinesisStream)
-                .filter(approvalRequestDto -> username.equalsIgnoreCase(approvalRequestDto.getUsername()));
+    private void publish(String username, ApprovalRequestDto approvalRequest) {
+        subscribers.publish(username, SseFrame.of(null, null, codecs.json().encode(approvalRequest)));
     }
 
-    @PreDestroy
-    public void shutdown() {
-        System.out.println("\n\nShutting down...");
-        kinesisClient.close();
+    public Flux<SseFrame> getUpdatesForUser(String username) {
+        // Only the first connection on this node starts consuming the stream:
+        shardSubscriptionManager.start(this::routeRecord);
+        return subscribers.subscribe(username.toLowerCase());
     }
 }
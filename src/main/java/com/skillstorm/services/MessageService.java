@@ -1,9 +1,16 @@
 package com.skillstorm.services;
 
 import com.skillstorm.dtos.ApprovalRequestDto;
+import com.skillstorm.dtos.InboxCountsDto;
+import com.skillstorm.dtos.InboxItemDto;
+import com.skillstorm.dtos.PageDto;
+import com.skillstorm.utils.ReplayBuffer;
+import com.skillstorm.utils.SseFrame;
+import org.springframework.data.domain.Pageable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Collection;
 import java.util.UUID;
 
 public interface MessageService {
@@ -11,18 +18,48 @@ public interface MessageService {
     // Find all inbox messages. Just for testing:
     Flux<ApprovalRequestDto> findAll();
 
+    // Find one page of all inbox messages:
+    Mono<PageDto<ApprovalRequestDto>> findAll(Pageable pageable);
+
     // Get single message by username and form id:
     Mono<ApprovalRequestDto> getMessageByUsernameAndFormId(String username, UUID formId);
 
+    // Get several messages from a user's inbox at once:
+    Flux<ApprovalRequestDto> getMessagesByUsernameAndFormIds(String username, Collection<UUID> formIds);
+
     // Get all Forms awaiting a User's approval:
     Flux<ApprovalRequestDto> getApprovalRequestsByUsername(String username);
 
-    // Check the cache to see if the user has any new messages. If so, load them into the corresponding sink:
-    Flux<ApprovalRequestDto> getApprovalRequestUpdates(String username);
+    // Get one page of the Forms awaiting a User's approval:
+    Mono<PageDto<ApprovalRequestDto>> getApprovalRequestsByUsername(String username, Pageable pageable);
+
+    // Stream all Forms awaiting a User's approval without holding the whole inbox in memory:
+    Flux<ApprovalRequestDto> streamApprovalRequestsByUsername(String username);
+
+    // Stream new messages for a user, first replaying any they missed after lastEventId:
+    Flux<ReplayBuffer.Event<ApprovalRequestDto>> getApprovalRequestUpdates(String username, Long lastEventId);
+
+    // Get all approval and verification requests waiting on a User, merged into one inbox:
+    Flux<InboxItemDto> getCombinedInbox(String username);
+
+    // Stream the combined inbox without holding either kind of request in memory:
+    Flux<InboxItemDto> streamCombinedInbox(String username);
+
+    // Stream new approval and verification requests for a user, first replaying any they missed after lastEventId:
+    Flux<ReplayBuffer.Event<InboxItemDto>> getCombinedInboxUpdates(String username, Long lastEventId);
+
+    // Get the total, unread and urgent counts for a user's inbox:
+    Mono<InboxCountsDto> getInboxCounts(String username);
+
+    // Stream a user's inbox counts, sending the current ones and then new ones whenever they change:
+    Flux<SseFrame> getInboxCountUpdates(String username);
 
     // Update a message's viewed field to show that it has been read:
     Mono<ApprovalRequestDto> markMessageAsViewed(String username, UUID formId);
 
+    // Mark every message in a user's inbox as read:
+    Mono<Void> markAllMessagesAsViewed(String username);
+
     // Delete by Username and FormId:
     Mono<Void> deleteByUsernameAndFormId(ApprovalRequestDto approvalRequest);
 }
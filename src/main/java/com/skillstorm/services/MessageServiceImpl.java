@@ -1,179 +1,452 @@
 package com.skillstorm.services;
 
 import com.rabbitmq.client.Channel;
-import com.skillstorm.constants.Queues;
 import com.skillstorm.dtos.ApprovalRequestDto;
+import com.skillstorm.dtos.InboxCountsDto;
+import com.skillstorm.dtos.InboxItemDto;
+import com.skillstorm.dtos.PageDto;
 import com.skillstorm.dtos.VerificationRequestDto;
+import com.skillstorm.entities.ApprovalDeadline;
 import com.skillstorm.entities.ApprovalRequest;
+import com.skillstorm.entities.DeadlineScanWatermark;
+import com.skillstorm.repositories.ApprovalDeadlineRepository;
 import com.skillstorm.repositories.ApprovalRequestRepository;
+import com.skillstorm.repositories.DeadlineScanWatermarkRepository;
 import com.skillstorm.repositories.VerificationRequestRepository;
 import com.skillstorm.utils.EventBus;
+import com.skillstorm.utils.ReactiveTimers;
+import com.skillstorm.utils.ReplayBuffer;
+import com.skillstorm.utils.SseFrame;
 import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.io.IOException;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Supplier;
 
+@Slf4j
 @Service
 public class MessageServiceImpl implements MessageService {
 
     private final ApprovalRequestRepository approvalRequestRepository;
+    private final ApprovalDeadlineRepository approvalDeadlineRepository;
     private final VerificationRequestRepository verificationRequestRepository;
-    private final RabbitTemplate rabbitTemplate;
 
-    // Set up cache for continuous polling for new messages without having to hit the actual database:
-    private final Map<String, Queue<ApprovalRequestDto>> approvalRequestsCache = new ConcurrentHashMap<>();
+    // Sends expired requests to Form-Service for auto-approval:
+    private final AutoApprovalDispatcher autoApprovalDispatcher;
 
     // Alternatively, utilize Kinesis data streams to publish real-time updates:
     private final KinesisService kinesisService;
 
-    // Event bus for more reactive sse emission but still not using kinesis:
+    // Whether new requests are also published to Kinesis, which is what feeds /kinesis/pending:
+    private final boolean publishToKinesis;
+
+    // Gets new requests to open SSE connections, on whichever instances hold them, and to the replay buffers for
+    // connections that reconnect:
     private final EventBus eventBus;
 
+    // Users' inboxes, served from memory once loaded:
+    private final InboxCache inboxCache;
+
+    // Unread and urgent counts for each user's inbox:
+    private final InboxCounters inboxCounters;
+
+    // Write-behind for marking messages as read:
+    private final ViewedWriter viewedWriter;
+
+    // Retries or parks deliveries whose work failed:
+    private final FailedDeliveries failedDeliveries;
+
+    // Time from picking up a delivery to finishing the work it triggered, per queue:
+    private final ReactiveTimers.Timing approvalRequestListenerTiming;
+    private final ReactiveTimers.Timing deletionRequestListenerTiming;
+    private final ReactiveTimers.Timing completionVerificationListenerTiming;
+
+    // Batches writes of incoming approval requests:
+    private final ApprovalRequestWriter approvalRequestWriter;
+
+    // Fires deadlines as they expire:
+    private final DeadlineScheduler deadlineScheduler;
+
+    // Decides which deadline index shards this instance is responsible for. Only owned shards are loaded into the wheel on
+    // takeover and swept, so the cost of scanning is split across instances rather than repeated by each of them:
+    private final DeadlineShardLeases deadlineShardLeases;
+
+    // The sweep is a safety net for deadlines the timing wheel didn't fire, such as ones registered on an instance that has
+    // since gone down. It only looks at deadlines that expired more than sweepGrace ago so the wheel gets the first chance:
+    private final Duration sweepInterval;
+    private final Duration sweepGrace;
+
+    // When taking over a shard, deadlines in this window around now are loaded into the wheel. Anything that expired
+    // before it is left to the sweep:
+    private final Duration rehydrateLookback;
+    private final Duration rehydrateLookahead;
+
+    // How far each shard has been swept, by whichever instance owned it at the time. Each sweep of a shard only reads the
+    // deadline buckets between there and now, and the watermark is kept in Cassandra so an instance taking a shard over
+    // starts from where its last owner stopped, however long ago that was. Watermarks read from there are cached here
+    // for as long as we keep owning the shard:
+    private final DeadlineScanWatermarkRepository deadlineScanWatermarkRepository;
+    private final Map<Integer, LocalDateTime> scannedUntil = new ConcurrentHashMap<>();
+
     @Autowired
-    public MessageServiceImpl(ApprovalRequestRepository approvalRequestRepository, VerificationRequestRepository verificationRequestRepository,
-                              RabbitTemplate rabbitTemplate, KinesisService kinesisService, EventBus eventBus) {
+    public MessageServiceImpl(ApprovalRequestRepository approvalRequestRepository, ApprovalDeadlineRepository approvalDeadlineRepository,
+                              VerificationRequestRepository verificationRequestRepository, AutoApprovalDispatcher autoApprovalDispatcher,
+                              KinesisService kinesisService, EventBus eventBus, ApprovalRequestWriter approvalRequestWriter,
+                              DeadlineScheduler deadlineScheduler, DeadlineShardLeases deadlineShardLeases,
+                              DeadlineScanWatermarkRepository deadlineScanWatermarkRepository,
+                              InboxCache inboxCache, InboxCounters inboxCounters,
+                              ViewedWriter viewedWriter, FailedDeliveries failedDeliveries, ReactiveTimers timers,
+                              @Value("${deadlines.sweep-interval-seconds:300}") long sweepIntervalSeconds,
+                              @Value("${deadlines.sweep-grace-seconds:60}") long sweepGraceSeconds,
+                              @Value("${deadlines.rehydrate-lookback-minutes:60}") long rehydrateLookbackMinutes,
+                              @Value("${deadlines.rehydrate-lookahead-minutes:10}") long rehydrateLookaheadMinutes,
+                              @Value("${kinesis.publish-updates:false}") boolean publishToKinesis) {
         this.approvalRequestRepository = approvalRequestRepository;
+        this.approvalDeadlineRepository = approvalDeadlineRepository;
         this.verificationRequestRepository = verificationRequestRepository;
-        this.rabbitTemplate = rabbitTemplate;
+        this.autoApprovalDispatcher = autoApprovalDispatcher;
         this.kinesisService = kinesisService;
+        this.publishToKinesis = publishToKinesis;
         this.eventBus = eventBus;
+        this.approvalRequestWriter = approvalRequestWriter;
+        this.deadlineScheduler = deadlineScheduler;
+        this.deadlineShardLeases = deadlineShardLeases;
+        this.deadlineScanWatermarkRepository = deadlineScanWatermarkRepository;
+        this.inboxCache = inboxCache;
+        this.inboxCounters = inboxCounters;
+        this.viewedWriter = viewedWriter;
+        this.failedDeliveries = failedDeliveries;
+        this.approvalRequestListenerTiming = timers.timing("rabbit.listener.latency", "queue", "approval-request-queue");
+        this.deletionRequestListenerTiming = timers.timing("rabbit.listener.latency", "queue", "deletion-request-queue");
+        this.completionVerificationListenerTiming = timers.timing("rabbit.listener.latency", "queue", "completion-verification-queue");
+        this.sweepInterval = Duration.ofSeconds(sweepIntervalSeconds);
+        this.sweepGrace = Duration.ofSeconds(sweepGraceSeconds);
+        this.rehydrateLookback = Duration.ofMinutes(rehydrateLookbackMinutes);
+        this.rehydrateLookahead = Duration.ofMinutes(rehydrateLookaheadMinutes);
     }
 
-    // Set up a scheduled task to run periodically to check for stale approval requests. We're just testing here, so we want the
-    // task to run frequently for testing to ensure that everything works as expected. We're running it every 30 seconds:
+    // Start the deadline timing wheel and start competing for deadline shards. Whenever we take over a shard its pending
+    // deadlines are loaded into the wheel, and any that expired recently fire right away. Then start the periodic sweep of
+    // our shards as a backstop. A sweep that fails leaves the watermark where it was, so the next one covers its window again:
     @PostConstruct
     private void startScheduler() {
-        Flux.interval(Duration.ofSeconds(300000))
+        deadlineScheduler.start(this::submitExpiredDeadline);
+        deadlineShardLeases.start(this::rehydrateShard);
+
+        Flux.interval(sweepInterval)
                 .onBackpressureDrop()
-                .flatMap(tick -> checkForApprovalDeadlines())
+                .concatMap(tick -> checkForApprovalDeadlines()
+                        .onErrorResume(e -> {
+                            log.warn("Deadline sweep failed, retrying with the next one", e);
+                            return Mono.empty();
+                        }))
                 .subscribe();
     }
 
+    // Listeners use manual acks: each delivery is acknowledged once the work it triggered has finished. If it failed it's
+    // handed to FailedDeliveries, which has it retried after a delay, or parked once it has failed too often or can never
+    // be processed. The listener thread only assembles and subscribes to the pipeline, so a consumer can have as many
+    // deliveries in flight as its prefetch allows without blocking:
+    @RabbitListener(queues = "approval-request-queue", containerFactory = "approvalRequestListenerFactory", errorHandler = "rejectingErrorHandler")
+    public void receiveApprovalRequest(@Payload ApprovalRequestDto approvalRequest, Channel channel, Message message) {
+        acknowledgeOnCompletion(approvalRequestListenerTiming.mono(Mono.defer(() -> postApprovalRequestToInbox(approvalRequest))), channel, message);
+    }
+
+    @RabbitListener(queues = "deletion-request-queue", containerFactory = "deletionRequestListenerFactory", errorHandler = "rejectingErrorHandler")
+    public void receiveDeletionRequest(@Payload ApprovalRequestDto approvalRequest, Channel channel, Message message) {
+        acknowledgeOnCompletion(deletionRequestListenerTiming.mono(Mono.defer(() -> deleteByUsernameAndFormId(approvalRequest))), channel, message);
+    }
+
+    @RabbitListener(queues = "completion-verification-queue", containerFactory = "completionVerificationListenerFactory", errorHandler = "rejectingErrorHandler")
+    public void receiveCompletionVerificationRequest(@Payload VerificationRequestDto verificationRequest, Channel channel, Message message) {
+        acknowledgeOnCompletion(completionVerificationListenerTiming.mono(Mono.defer(() -> addCompletionVerificationRequest(verificationRequest))), channel, message);
+    }
+
      // Post ApprovalRequest to User's inbox. Caching version:
-    @RabbitListener(queues = "approval-request-queue")
-    public Mono<Void> postApprovalRequestToInbox(@Payload ApprovalRequestDto approvalRequest) {
+    public Mono<Void> postApprovalRequestToInbox(ApprovalRequestDto approvalRequest) {
 
         // Set the approval deadline (20 seconds from now). May remove the timeCreated field in the future since we're only
         // really using it to create the deadline, but it may be something people would want tracked:
-        approvalRequest.setTimeCreated(LocalDateTime.now());
-        approvalRequest.setApprovalDeadline(approvalRequest.getTimeCreated().plusSeconds(20));
-
-        return approvalRequestRepository.save(approvalRequest.mapToEntity())
-                .map(ApprovalRequestDto::new)
-                //.doOnSuccess(kinesisService::publishApprovalRequestToKinesis)
-                .doOnSuccess(this::addRequestToCache)
-                //.doOnSuccess(approvalRequestDto -> eventBus.publish(approvalRequest.getUsername(), approvalRequestDto))
+        Mono<ApprovalRequest> entity = validated(approvalRequest.getUsername(), approvalRequest.getFormId(), () -> {
+            approvalRequest.setTimeCreated(LocalDateTime.now());
+            approvalRequest.setApprovalDeadline(approvalRequest.getTimeCreated().plusSeconds(20));
+            return approvalRequest.mapToEntity();
+        });
+
+        // The request and its deadline index entry are written in a batch with whatever else arrived at the same time. The
+        // returned Mono still completes per message, so each message is only acknowledged once its own write has landed.
+        // Whatever was stored for the request before is read first, so a redelivery or an update isn't counted as a new one:
+        return entity.flatMap(request -> approvalRequestRepository.findByUsernameAndFormId(request.getUsername(), request.getFormId())
+                        .filter(existing -> !existing.isPartial())
+                        .map(ApprovalRequestDto::new)
+                        .map(Optional::of)
+                        .defaultIfEmpty(Optional.empty())
+                        .flatMap(previous -> approvalRequestWriter.save(request)
+                                .then(Mono.fromSupplier(() -> {
+                                    deadlineScheduler.schedule(new ApprovalDeadline(request));
+                                    return new ApprovalRequestDto(request);
+                                }))
+                                .doOnSuccess(inboxCache::put)
+                                .doOnSuccess(dto -> eventBus.publish(dto.getUsername().toLowerCase(), new InboxItemDto(dto)))
+                                .flatMap(dto -> previous.map(existing -> inboxCounters.replaced(existing, dto))
+                                        .orElseGet(() -> inboxCounters.added(dto))
+                                        .thenReturn(dto))))
+                .doOnSuccess(this::sendToKinesis)
                 .then();
     }
 
-    // When we create a new entry for a user, add it to the cache:
-    private void addRequestToCache(ApprovalRequestDto approvalRequest) {
-        approvalRequestsCache
-                .computeIfAbsent(approvalRequest.getUsername(), k -> new LinkedBlockingQueue<>())
-                .offer(approvalRequest);
+    // Kinesis only feeds /kinesis/pending, so publishing is best-effort: the delivery is acknowledged without waiting for
+    // it, and a failure is logged rather than having the message redelivered and everything above done again. Published
+    // after the replay buffer so /messages/pending doesn't wait on the Kinesis batch either:
+    private void sendToKinesis(ApprovalRequestDto approvalRequest) {
+        if(publishToKinesis) {
+            kinesisService.publishApprovalRequestToKinesis(approvalRequest)
+                    .subscribe(null, e -> log.warn("Failed to publish approval request {} for {} to Kinesis",
+                            approvalRequest.getFormId(), approvalRequest.getUsername(), e));
+        }
     }
 
     // Get all Forms awaiting a User's approval:
     @Override
     public Flux<ApprovalRequestDto> getApprovalRequestsByUsername(String username) {
-        return approvalRequestRepository.findAllByUsername(username.toLowerCase())
-                .map(ApprovalRequestDto::new);
+        return inboxCache.getInbox(username.toLowerCase());
     }
 
-//    // Check cache for new messages. If so, emit them and then subscribe to the event bus to receive updates in real time:
-//    @Override
-//    public Flux<ApprovalRequestDto> getApprovalRequestUpdates(String username) {
-//        Queue<ApprovalRequestDto> userMessages = approvalRequestsCache.get(username.toLowerCase());
-//
-//        if(userMessages != null && !userMessages.isEmpty()) {
-//            return Flux.fromIterable(userMessages)
-//                    .concatWith(eventBus.subscribe(username));
-//        }
-//
-//        return eventBus.subscribe(username);
-//    }
+    // Pages are read from Cassandra rather than the inbox cache, since it's the driver's paging state that lets the next
+    // page carry on where this one stopped. New requests land in Cassandra before the cache, and the user's pending read
+    // marks are written before reading, so a user still sees their own changes:
+    @Override
+    public Mono<PageDto<ApprovalRequestDto>> getApprovalRequestsByUsername(String username, Pageable pageable) {
+        return viewedWriter.flush(username.toLowerCase())
+                .then(approvalRequestRepository.findAllByUsername(username.toLowerCase(), pageable))
+                .map(page -> new PageDto<>(page, ApprovalRequestDto::new));
+    }
 
-    // Check the cache to see if the user has any new messages. If so, emit them and remove them from the cache:
     @Override
-    public Flux<ApprovalRequestDto> getApprovalRequestUpdates(String username) {
-        Queue<ApprovalRequestDto> userMessages = approvalRequestsCache.get(username.toLowerCase());
+    public Flux<ApprovalRequestDto> streamApprovalRequestsByUsername(String username) {
+        return inboxCache.streamInbox(username.toLowerCase());
+    }
 
-        if(userMessages == null || userMessages.isEmpty()) {
-            return Flux.empty();
-        }
+    // Replay any messages the user missed since lastEventId, then keep streaming new ones as they arrive:
+    @Override
+    public Flux<ReplayBuffer.Event<ApprovalRequestDto>> getApprovalRequestUpdates(String username, Long lastEventId) {
+        return eventBus.approvalRequestUpdates(username.toLowerCase(), lastEventId);
+    }
 
-        return Flux.create(sink -> {
-            while(!userMessages.isEmpty()) {
-                ApprovalRequestDto message = userMessages.poll();
-                sink.next(message);
-            }
-            sink.complete();
-        });
+    @Override
+    public Flux<InboxItemDto> getCombinedInbox(String username) {
+        return inboxCache.getCombinedInbox(username.toLowerCase());
+    }
+
+    @Override
+    public Flux<InboxItemDto> streamCombinedInbox(String username) {
+        return inboxCache.streamCombinedInbox(username.toLowerCase());
     }
 
-    // Update a message's viewed field to show that it has been read:
+    @Override
+    public Flux<ReplayBuffer.Event<InboxItemDto>> getCombinedInboxUpdates(String username, Long lastEventId) {
+        return eventBus.inboxItemUpdates(username.toLowerCase(), lastEventId);
+    }
+
+    @Override
+    public Mono<InboxCountsDto> getInboxCounts(String username) {
+        return inboxCounters.getCounts(username.toLowerCase());
+    }
+
+    @Override
+    public Flux<SseFrame> getInboxCountUpdates(String username) {
+        return inboxCounters.streamCounts(username.toLowerCase());
+    }
+
+    // Update a message's viewed field to show that it has been read. The message is looked up in the cache, which also
+    // tells us whether it exists, and the change is made there straight away so the user's next read sees it. Writing it to
+    // Cassandra is left to the ViewedWriter, which coalesces repeat clicks, writes each user's marks together and takes the
+    // ones it changes off the unread count:
     @Override
     public Mono<ApprovalRequestDto> markMessageAsViewed(String username, UUID formId) {
-        return approvalRequestRepository.findByUsernameAndFormId(username.toLowerCase(), formId)
-                .flatMap(approvalRequest ->  {
-                    approvalRequest.setViewed(true);
-                    return approvalRequestRepository.save(approvalRequest)
-                            .map(ApprovalRequestDto::new);
+        String user = username.toLowerCase();
+        return inboxCache.getMessage(user, formId)
+                .flatMap(approvalRequest -> approvalRequest.isViewed()
+                        ? Mono.just(approvalRequest)
+                        : inboxCache.markViewed(approvalRequest, this::asViewed)
+                                // Someone else read it first:
+                                .switchIfEmpty(Mono.defer(() -> inboxCache.getMessage(user, formId))));
+    }
+
+    // Mark everything unread in the user's inbox as read, and complete once it's been written and counted:
+    @Override
+    public Mono<Void> markAllMessagesAsViewed(String username) {
+        String user = username.toLowerCase();
+        return inboxCache.getInbox(user)
+                .filter(approvalRequest -> !approvalRequest.isViewed())
+                .map(this::asViewed)
+                .collectList()
+                .filter(viewed -> !viewed.isEmpty())
+                .flatMap(viewed -> {
+                    viewedWriter.markViewed(user, viewed);
+                    inboxCache.putAll(user, viewed);
+                    return viewedWriter.flush(user);
                 });
     }
 
-    // Return all db entries. Just for testing
-    // TODO: Delete when no longer needed
+    // Cached messages are shared, so read ones are copies:
+    private ApprovalRequestDto asViewed(ApprovalRequestDto approvalRequest) {
+        ApprovalRequestDto viewed = new ApprovalRequestDto(approvalRequest.mapToEntity());
+        viewed.setViewed(true);
+        return viewed;
+    }
+
+    // Return all db entries. Just for testing:
     @Override
     public Flux<ApprovalRequestDto> findAll() {
         return approvalRequestRepository.findAll()
                 .map(ApprovalRequestDto::new);
     }
 
+    @Override
+    public Mono<PageDto<ApprovalRequestDto>> findAll(Pageable pageable) {
+        return approvalRequestRepository.findAll(pageable)
+                .map(page -> new PageDto<>(page, ApprovalRequestDto::new));
+    }
+
     @Override
     public Mono<ApprovalRequestDto> getMessageByUsernameAndFormId(String username, UUID formId) {
-        return approvalRequestRepository.findByUsernameAndFormId(username.toLowerCase(), formId)
-                .map(ApprovalRequestDto::new);
+        return inboxCache.getMessage(username.toLowerCase(), formId);
+    }
+
+    @Override
+    public Flux<ApprovalRequestDto> getMessagesByUsernameAndFormIds(String username, Collection<UUID> formIds) {
+        return inboxCache.getMessages(username.toLowerCase(), formIds);
+    }
+
+    // Load one shard's deadlines from around now into the wheel:
+    private void rehydrateShard(int shard) {
+        // Another instance may have swept the shard since we last owned it:
+        scannedUntil.remove(shard);
+
+        LocalDateTime from = LocalDateTime.now().minus(rehydrateLookback);
+        LocalDateTime to = LocalDateTime.now().plus(rehydrateLookahead);
+
+        Flux.fromIterable(ApprovalDeadline.bucketsBetween(from, to))
+                .concatMap(bucket -> approvalDeadlineRepository.findAllByBucketAndShardBetween(bucket, shard, from, to))
+                .doOnNext(deadlineScheduler::schedule)
+                .subscribe(null, e -> log.warn("Failed to load deadlines for shard {}, leaving them to the sweep", shard, e));
     }
 
-    // Query the repository for all ApprovalRequests past their deadlines:
+    // Read the deadline buckets that have expired since the last sweep in the shards we own and submit everything in them
+    // for auto-approval:
     public Flux<Void> checkForApprovalDeadlines() {
-        return approvalRequestRepository
-                .findAllRequestsWithExpiredDeadlines(LocalDateTime.now())
-                .flatMap(this::submitForAutoApproval);
+        LocalDateTime to = LocalDateTime.now().minus(sweepGrace);
+        return Flux.fromIterable(deadlineShardLeases.ownedShards())
+                .flatMap(shard -> sweepShard(shard, to));
     }
 
-    // Submit to Form-Service for auto-approval:
-    private Mono<Void> submitForAutoApproval(ApprovalRequest approvalRequest) {
-        return Mono.fromRunnable(() -> rabbitTemplate.convertAndSend(Queues.AUTO_APPROVAL.toString(), new ApprovalRequestDto(approvalRequest)))
-                .then();
+    private Flux<Void> sweepShard(int shard, LocalDateTime to) {
+        return scannedUntil(shard).flatMapMany(from -> Flux.fromIterable(ApprovalDeadline.bucketsBetween(from, to))
+                .concatMap(bucket -> approvalDeadlineRepository.findAllByBucketAndShardBetween(bucket, shard, from, to))
+                .flatMap(this::submitExpiredDeadline)
+                // Only move the watermark once everything before it has been handled so a failed scan gets retried:
+                .concatWith(deadlineScanWatermarkRepository.save(new DeadlineScanWatermark(shard, to))
+                        .doOnSuccess(saved -> scannedUntil.put(shard, to))
+                        .then()));
+    }
+
+    // A shard that has never been swept starts from as far back as a takeover loads into the wheel:
+    private Mono<LocalDateTime> scannedUntil(int shard) {
+        LocalDateTime cached = scannedUntil.get(shard);
+        if(cached != null) {
+            return Mono.just(cached);
+        }
+        return deadlineScanWatermarkRepository.findByShard(shard)
+                .map(DeadlineScanWatermark::getScannedUntil)
+                .defaultIfEmpty(LocalDateTime.now().minus(rehydrateLookback));
+    }
+
+    // Submit the request behind an expired deadline for auto-approval. Whether it was just submitted, had already been
+    // submitted or has already been removed from the inbox, remove it from the deadline index so it isn't picked up again:
+    private Mono<Void> submitExpiredDeadline(ApprovalDeadline deadline) {
+        deadlineScheduler.cancel(deadline.getUsername(), deadline.getFormId());
+        return approvalRequestRepository.findByUsernameAndFormId(deadline.getUsername(), deadline.getFormId())
+                .filter(approvalRequest -> !approvalRequest.isPartial())
+                .flatMap(autoApprovalDispatcher::dispatch)
+                .then(approvalDeadlineRepository.delete(deadline));
     }
 
-    // Delete ApprovalRequest from User's inbox:
-    @RabbitListener(queues = "deletion-request-queue")
-    public Mono<Void> deleteByUsernameAndFormId(@Payload ApprovalRequestDto approvalRequest) {
-        return approvalRequestRepository
-                .deleteByUsernameAndFormId(approvalRequest.getUsername(), approvalRequest.getFormId());
+    // Delete ApprovalRequest from User's inbox. Deletion requests don't carry the deadline, so look the request up first
+    // to find its deadline index entry and what it counted towards. If it's already gone there's nothing left to delete.
+    // Any read mark for it still waiting to be written is written first or dropped, so it can't bring the row back:
+    @Override
+    public Mono<Void> deleteByUsernameAndFormId(ApprovalRequestDto approvalRequest) {
+        return validated(approvalRequest.getUsername(), approvalRequest.getFormId(), () -> approvalRequest)
+                .flatMap(request -> {
+                    deadlineScheduler.cancel(request.getUsername(), request.getFormId());
+                    return viewedWriter.flush(request.getUsername())
+                            .then(approvalRequestRepository.findByUsernameAndFormId(request.getUsername(), request.getFormId()))
+                            .flatMap(existing -> existing.isPartial()
+                                    // Left behind by an earlier delete, which has already cleaned up everything else:
+                                    ? approvalRequestRepository.deleteByUsernameAndFormId(existing.getUsername(), existing.getFormId())
+                                    : approvalDeadlineRepository.delete(new ApprovalDeadline(existing))
+                                            .then(approvalRequestRepository.deleteByUsernameAndFormId(existing.getUsername(), existing.getFormId()))
+                                            .then(inboxCounters.removed(new ApprovalRequestDto(existing))))
+                            .then(Mono.fromRunnable(() -> {
+                                viewedWriter.cancel(request.getUsername(), request.getFormId());
+                                inboxCache.remove(request.getUsername(), request.getFormId());
+                            }));
+                });
     }
 
-    // Add Completion Verification request to approver's inbox:
-    @RabbitListener(queues = "completion-verification-queue")
-    public Mono<Void> addCompletionVerificationRequest(@Payload VerificationRequestDto verificationRequest) {
-        return verificationRequestRepository.save(verificationRequest.mapToEntity())
+    // Add Completion Verification request to approver's inbox, and let them know about it on the combined inbox stream:
+    public Mono<Void> addCompletionVerificationRequest(VerificationRequestDto verificationRequest) {
+        return validated(verificationRequest.getUsername(), verificationRequest.getFormId(), verificationRequest::mapToEntity)
+                .flatMap(verificationRequestRepository::save)
+                .map(VerificationRequestDto::new)
+                .doOnSuccess(inboxCache::putVerification)
+                .doOnSuccess(saved -> eventBus.publish(saved.getUsername().toLowerCase(), new InboxItemDto(saved)))
                 .then();
     }
 
+    // Thrown for a message that would fail the same way however many times it was redelivered:
+    private static final class UnprocessableMessageException extends RuntimeException {
+
+        private UnprocessableMessageException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    // Check an incoming message names the message it's about and turn it into what's written, failing with
+    // UnprocessableMessageException if either can't be done:
+    private static <T> Mono<T> validated(String username, UUID formId, Supplier<T> mapping) {
+        return Mono.fromSupplier(() -> {
+                    if(username == null || formId == null) {
+                        throw new IllegalArgumentException("Message is missing its username or form id");
+                    }
+                    return mapping.get();
+                })
+                .onErrorMap(e -> new UnprocessableMessageException("Invalid message for " + username + ", form " + formId, e));
+    }
+
+    // Acknowledge the delivery once the work completes, or have it retried or parked if the work fails:
+    private void acknowledgeOnCompletion(Mono<Void> work, Channel channel, Message message) {
+        long deliveryTag = message.getMessageProperties().getDeliveryTag();
+        work.then(handleAcknowledgement(channel, deliveryTag))
+                .onErrorResume(error -> handleNegativeAcknowledgement(error, channel, message))
+                .subscribe(null, e -> log.error("Failed to settle delivery {}", deliveryTag, e));
+    }
+
     // Utility method to handle acknowledgement of message receipt for all listener methods:
     private Mono<Void> handleAcknowledgement(Channel channel, long deliveryTag) {
         return Mono.fromRunnable(() -> {
@@ -186,16 +459,16 @@ public class MessageServiceImpl implements MessageService {
     }
 
 
-    // Utility method to handle message not received due to error:
-    private Mono<Void> handleNegativeAcknowledgement(Throwable error, Channel channel, long deliveryTag) {
+    // Utility method to handle message not received due to error. A message that'll never succeed isn't retried. Parking
+    // a message publishes it, which blocks, so it's done off the thread that finished the work:
+    private Mono<Void> handleNegativeAcknowledgement(Throwable error, Channel channel, Message message) {
         return Mono.fromRunnable(() -> {
             try {
-                // Reject the message, and requeue it
-                channel.basicNack(deliveryTag, false, true);
+                failedDeliveries.handle(message, channel, error, !(error instanceof UnprocessableMessageException));
             } catch (IOException e) {
                 throw new RuntimeException("Failed to negatively acknowledge message", e);
             }
-        }).then();
+        }).subscribeOn(Schedulers.boundedElastic()).then();
     }
 
 }
@@ -0,0 +1,279 @@
+package com.skillstorm.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
+import software.amazon.awssdk.services.kinesis.model.*;
+import software.amazon.awssdk.services.kinesis.model.Record;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+// Keeps this node subscribed to every shard of the stream. A SubscribeToShard call only delivers records for about five
+// minutes, so each shard is resubscribed as soon as its subscription ends, starting right after the last record it
+// delivered, and records keep flowing across the rollover. When a shard is closed by a split or merge its children are
+// picked up from the beginning once all their parents have been read to the end. Failed or throttled subscriptions are
+// retried with jittered exponential backoff.
+//
+// Positions are checkpointed as they advance, and a shard that has been read to the end is checkpointed as such so it
+// isn't read again after a restart.
+@Slf4j
+@Component
+public class ShardSubscriptionManager {
+
+    private final KinesisAsyncClient kinesisClient;
+    private final KinesisCheckpointer checkpointer;
+    private final String streamName;
+    private final String consumerArn;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final Map<String, ShardConsumer> consumers = new ConcurrentHashMap<>();
+
+    // Shards this node has read to the end:
+    private final Set<String> completed = ConcurrentHashMap.newKeySet();
+
+    // How far behind the tip of its shard the most recent event was:
+    private final AtomicLong millisBehindLatest = new AtomicLong();
+    private final Counter renewals;
+    private final Counter failures;
+
+    private volatile Consumer<Record> recordHandler;
+    private volatile boolean running = true;
+
+    @Autowired
+    public ShardSubscriptionManager(KinesisAsyncClient kinesisClient, KinesisCheckpointer checkpointer, MeterRegistry meterRegistry,
+                                    @Value("${kinesis.stream-name}") String streamName,
+                                    @Value("${kinesis.consumer-arn}") String consumerArn,
+                                    @Value("${kinesis.subscription.initial-backoff-millis:200}") long initialBackoffMillis,
+                                    @Value("${kinesis.subscription.max-backoff-millis:10000}") long maxBackoffMillis) {
+        this.kinesisClient = kinesisClient;
+        this.checkpointer = checkpointer;
+        this.streamName = streamName;
+        this.consumerArn = consumerArn;
+        this.initialBackoff = Duration.ofMillis(initialBackoffMillis);
+        this.maxBackoff = Duration.ofMillis(maxBackoffMillis);
+
+        meterRegistry.gauge("kinesis.consumer.millis-behind-latest", millisBehindLatest);
+        this.renewals = meterRegistry.counter("kinesis.consumer.subscriptions", "result", "renewed");
+        this.failures = meterRegistry.counter("kinesis.consumer.subscriptions", "result", "failed");
+    }
+
+    // Start consuming the stream, handing every record to the handler on the SDK's event threads. Only the first call does
+    // anything; if the shards can't be listed it keeps trying in the background:
+    public void start(Consumer<Record> recordHandler) {
+        if(!started.compareAndSet(false, true)) {
+            return;
+        }
+        this.recordHandler = recordHandler;
+        discoverShards(0);
+    }
+
+    public boolean isStarted() {
+        return started.get();
+    }
+
+    // Number of shards currently being consumed:
+    public int size() {
+        return consumers.size();
+    }
+
+    private void discoverShards(int attempt) {
+        listShards()
+                .zipWith(checkpointer.load())
+                .subscribe(shardsAndCheckpoints -> startShards(shardsAndCheckpoints.getT1(), shardsAndCheckpoints.getT2()), e -> {
+                    log.warn("Failed to list shards of {}: {}", streamName, e.getMessage());
+                    Mono.delay(backoff(attempt)).subscribe(tick -> discoverShards(attempt + 1));
+                });
+    }
+
+    // Follow nextToken until every shard has been listed:
+    private Mono<List<Shard>> listShards() {
+        return Mono.fromFuture(() -> kinesisClient.listShards(ListShardsRequest.builder().streamName(streamName).build()))
+                .expand(response -> response.nextToken() == null
+                        ? Mono.empty()
+                        : Mono.fromFuture(() -> kinesisClient.listShards(ListShardsRequest.builder().nextToken(response.nextToken()).build())))
+                .flatMapIterable(ListShardsResponse::shards)
+                .collectList();
+    }
+
+    // Decide where to start on each shard:
+    //  - a shard with a checkpoint resumes right after it, unless it was already read to the end;
+    //  - a closed shard without one is skipped, since its records predate us;
+    //  - an open shard without one waits if we're still reading one of its parents, starts from the beginning if we
+    //    finished a parent but never got to it, and otherwise starts with new records.
+    private void startShards(List<Shard> shards, Map<String, String> checkpoints) {
+        checkpoints.forEach((shardId, checkpoint) -> {
+            if(KinesisCheckpointer.SHARD_END.equals(checkpoint)) {
+                completed.add(shardId);
+            }
+        });
+
+        Set<String> resuming = new HashSet<>();
+        for(Shard shard : shards) {
+            String checkpoint = checkpoints.get(shard.shardId());
+            if(checkpoint != null && !completed.contains(shard.shardId())) {
+                resuming.add(shard.shardId());
+                startShard(shard.shardId(), StartingPosition.builder()
+                        .type(ShardIteratorType.AFTER_SEQUENCE_NUMBER)
+                        .sequenceNumber(checkpoint)
+                        .build());
+            }
+        }
+
+        for(Shard shard : shards) {
+            if(checkpoints.containsKey(shard.shardId()) || shard.sequenceNumberRange().endingSequenceNumber() != null) {
+                continue;
+            }
+            List<String> parents = parentsOf(shard);
+            if(parents.stream().anyMatch(resuming::contains)) {
+                continue;
+            }
+            startShard(shard.shardId(), StartingPosition.builder()
+                    .type(parents.stream().anyMatch(completed::contains) ? ShardIteratorType.TRIM_HORIZON : ShardIteratorType.LATEST)
+                    .build());
+        }
+    }
+
+    private List<String> parentsOf(Shard shard) {
+        return Stream.of(shard.parentShardId(), shard.adjacentParentShardId())
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    private void startShard(String shardId, StartingPosition startingPosition) {
+        if(!running || completed.contains(shardId)) {
+            return;
+        }
+        consumers.computeIfAbsent(shardId, id -> {
+            log.info("Subscribing to shard {} at {}", id, startingPosition.typeAsString());
+            ShardConsumer consumer = new ShardConsumer(id, startingPosition);
+            consumer.subscribe();
+            return consumer;
+        });
+    }
+
+    // The shard has been read to the end. Pick up each child once all of its parents are done:
+    private void onShardEnd(String shardId, List<ChildShard> children) {
+        log.info("Shard {} has ended, following {} child shards", shardId, children.size());
+        completed.add(shardId);
+        consumers.remove(shardId);
+        checkpointer.update(shardId, KinesisCheckpointer.SHARD_END);
+
+        for(ChildShard child : children) {
+            if(child.parentShards().stream().allMatch(parent -> completed.contains(parent) || !consumers.containsKey(parent))) {
+                startShard(child.shardId(), StartingPosition.builder().type(ShardIteratorType.TRIM_HORIZON).build());
+            }
+        }
+    }
+
+    private Duration backoff(int attempt) {
+        long ceiling = Math.min(maxBackoff.toMillis(), initialBackoff.toMillis() << Math.min(attempt, 20));
+        // Full jitter so shards that failed together don't all retry together:
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(initialBackoff.toMillis(), Math.max(ceiling, initialBackoff.toMillis()) + 1));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        consumers.values().forEach(ShardConsumer::cancel);
+    }
+
+    // One shard's chain of subscriptions. Only one is open at a time; each picks up from where the previous one stopped:
+    private final class ShardConsumer {
+
+        private final String shardId;
+
+        // Where the next subscription starts. Advanced to just after the last delivered record as events arrive:
+        private volatile StartingPosition position;
+        private volatile boolean ended;
+        private volatile CompletableFuture<Void> subscription;
+        private volatile int attempt;
+
+        private ShardConsumer(String shardId, StartingPosition position) {
+            this.shardId = shardId;
+            this.position = position;
+        }
+
+        private void subscribe() {
+            if(!running) {
+                return;
+            }
+
+            SubscribeToShardRequest request = SubscribeToShardRequest.builder()
+                    .consumerARN(consumerArn)
+                    .shardId(shardId)
+                    .startingPosition(position)
+                    .build();
+
+            SubscribeToShardResponseHandler responseHandler = SubscribeToShardResponseHandler.builder()
+                    .subscriber(SubscribeToShardResponseHandler.Visitor.builder()
+                            .onSubscribeToShardEvent(this::onEvent)
+                            .build())
+                    .build();
+
+            subscription = kinesisClient.subscribeToShard(request, responseHandler);
+            subscription.whenComplete((done, e) -> {
+                if(ended || !running) {
+                    return;
+                }
+                if(e == null) {
+                    // The subscription ran its course. Carry straight on from where it stopped:
+                    renewals.increment();
+                    subscribe();
+                } else {
+                    failures.increment();
+                    Duration delay = backoff(attempt++);
+                    log.warn("Subscription to shard {} failed, retrying in {}ms: {}", shardId, delay.toMillis(), e.getMessage());
+                    Mono.delay(delay).subscribe(tick -> subscribe());
+                }
+            });
+        }
+
+        private void onEvent(SubscribeToShardEvent event) {
+            attempt = 0;
+            event.records().forEach(recordHandler);
+            if(event.millisBehindLatest() != null) {
+                millisBehindLatest.set(event.millisBehindLatest());
+            }
+
+            // No continuation means the shard is closed and everything in it has been delivered:
+            if(event.continuationSequenceNumber() == null) {
+                ended = true;
+                onShardEnd(shardId, event.childShards());
+                return;
+            }
+
+            position = StartingPosition.builder()
+                    .type(ShardIteratorType.AFTER_SEQUENCE_NUMBER)
+                    .sequenceNumber(event.continuationSequenceNumber())
+                    .build();
+            checkpointer.update(shardId, event.continuationSequenceNumber());
+        }
+
+        private void cancel() {
+            CompletableFuture<Void> current = subscription;
+            if(current != null) {
+                current.cancel(true);
+            }
+        }
+    }
+}
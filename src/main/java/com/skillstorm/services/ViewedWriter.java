@@ -0,0 +1,161 @@
+package com.skillstorm.services;
+
+import com.skillstorm.dtos.ApprovalRequestDto;
+import com.skillstorm.repositories.ApprovalRequestRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Write-behind for marking messages as read. Marks are held in memory and written every flush interval, a user at a time,
+// as conditional batches on the user's partition that update just the viewed column and only apply to messages still
+// there, so a mark can never bring back a message removed in the meantime. Clicking the same message again before then
+// costs nothing. Each mark a write actually changes comes off the user's unread count, so however many instances mark the
+// same message, it's only taken off once.
+//
+// Until a mark is written, Cassandra still has the message as unread, so anything about to read a user's messages from
+// Cassandra should flush that user first. Flushing also waits for any write of theirs that's already under way.
+@Slf4j
+@Component
+public class ViewedWriter {
+
+    private final ApprovalRequestRepository approvalRequestRepository;
+    private final InboxCounters inboxCounters;
+    private final Duration flushInterval;
+    private final int maxBatchSize;
+    private final int maxConcurrentFlushes;
+
+    // Form ids marked as read but not yet being written, with their event dates for the counts, by username. Only changed
+    // through compute and remove, so a flush taking a user's marks can't lose one being added at the same time:
+    private final Map<String, Map<UUID, LocalDate>> pending = new ConcurrentHashMap<>();
+
+    // Form ids being written, by username. Cancelling one takes it out of here as well, so it isn't put back in the queue if
+    // its write fails. Changed only inside pending's compute for the user, as putting marks back is:
+    private final Map<String, Map<UUID, LocalDate>> writing = new ConcurrentHashMap<>();
+
+    // The latest write started for each user. Each one waits for the one before it, so waiting on this covers them all:
+    private final Map<String, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ViewedWriter(ApprovalRequestRepository approvalRequestRepository, InboxCounters inboxCounters,
+                        @Value("${cassandra.viewed-writes.flush-interval-millis:1000}") long flushIntervalMillis,
+                        @Value("${cassandra.viewed-writes.max-batch-size:30}") int maxBatchSize,
+                        @Value("${cassandra.viewed-writes.max-concurrent-flushes:4}") int maxConcurrentFlushes) {
+        this.approvalRequestRepository = approvalRequestRepository;
+        this.inboxCounters = inboxCounters;
+        this.flushInterval = Duration.ofMillis(flushIntervalMillis);
+        this.maxBatchSize = maxBatchSize;
+        this.maxConcurrentFlushes = maxConcurrentFlushes;
+    }
+
+    @PostConstruct
+    private void start() {
+        Flux.interval(flushInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> flushAll())
+                .subscribe();
+    }
+
+    // Mark messages as read. A user with a full batch waiting is flushed right away rather than at the next interval:
+    public void markViewed(String username, Collection<ApprovalRequestDto> approvalRequests) {
+        Map<UUID, LocalDate> marked = pending.compute(username, (key, existing) -> {
+            Map<UUID, LocalDate> marks = existing == null ? new ConcurrentHashMap<>() : existing;
+            approvalRequests.forEach(approvalRequest -> marks.put(approvalRequest.getFormId(), LocalDate.parse(approvalRequest.getEventDate())));
+            return marks;
+        });
+        if(marked.size() >= maxBatchSize) {
+            flush(username).subscribe();
+        }
+    }
+
+    // Forget a mark that hasn't been written yet, for a message that's being removed:
+    public void cancel(String username, UUID formId) {
+        pending.compute(username, (key, marks) -> {
+            Map<UUID, LocalDate> beingWritten = writing.get(username);
+            if(beingWritten != null) {
+                beingWritten.remove(formId);
+            }
+            if(marks == null) {
+                return null;
+            }
+            marks.remove(formId);
+            return marks.isEmpty() ? null : marks;
+        });
+    }
+
+    // Write the user's pending marks, and complete once they and any already being written have landed:
+    public Mono<Void> flush(String username) {
+        CompletableFuture<Void> write = inFlight.compute(username, (key, previous) -> {
+            Map<UUID, LocalDate> formIds = pending.remove(username);
+            if(formIds == null) {
+                return previous;
+            }
+            Mono<Void> waitForPrevious = previous == null ? Mono.empty() : Mono.fromFuture(previous, true);
+            return waitForPrevious.then(write(username, formIds)).toFuture();
+        });
+        if(write == null) {
+            return Mono.empty();
+        }
+        write.whenComplete((done, e) -> inFlight.remove(username, write));
+
+        // The write is shared, so one caller going away mustn't cancel it for everyone else:
+        return Mono.fromFuture(write, true);
+    }
+
+    public Mono<Void> flushAll() {
+        return Flux.fromIterable(List.copyOf(pending.keySet()))
+                .flatMap(this::flush, maxConcurrentFlushes)
+                .then();
+    }
+
+    // A user's marks are written as conditional batches on their partition of up to max-batch-size statements each, one
+    // batch after another. Marks for messages that have gone, or were already read, are dropped, and the rest come off the
+    // unread count once their batch has applied. If a batch fails its marks go back in the queue for the next flush, unless
+    // they've been cancelled since, and whoever was waiting reads them as unread in the meantime rather than failing too:
+    private Mono<Void> write(String username, Map<UUID, LocalDate> formIds) {
+        return Mono.defer(() -> {
+            writing.put(username, formIds);
+            Map<UUID, LocalDate> eventDates = Map.copyOf(formIds);
+            List<UUID> marks = List.copyOf(eventDates.keySet());
+            return Flux.range(0, (marks.size() + maxBatchSize - 1) / maxBatchSize)
+                    .map(batch -> marks.subList(batch * maxBatchSize, Math.min(marks.size(), (batch + 1) * maxBatchSize)))
+                    .concatMap(batch -> approvalRequestRepository.markViewed(username, batch)
+                            .flatMap(changed -> inboxCounters.viewed(username, changed.stream().map(eventDates::get).toList()))
+                            .onErrorResume(e -> {
+                                log.warn("Failed to write {} viewed marks for {}, retrying with the next flush", batch.size(), username, e);
+                                requeue(username, formIds, eventDates, batch);
+                                return Mono.empty();
+                            }))
+                    .doFinally(signal -> writing.remove(username, formIds))
+                    .then();
+        });
+    }
+
+    private void requeue(String username, Map<UUID, LocalDate> formIds, Map<UUID, LocalDate> eventDates, Collection<UUID> failed) {
+        pending.compute(username, (key, existing) -> {
+            Map<UUID, LocalDate> marks = existing == null ? new ConcurrentHashMap<>() : existing;
+            failed.stream()
+                    .filter(formIds::containsKey)
+                    .forEach(formId -> marks.putIfAbsent(formId, eventDates.get(formId)));
+            return marks.isEmpty() ? null : marks;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushAll().block(Duration.ofSeconds(10));
+    }
+}
@@ -1,45 +1,243 @@
 package com.skillstorm.utils;
 
-import com.skillstorm.constants.Queues;
 import com.skillstorm.dtos.ApprovalRequestDto;
+import com.skillstorm.dtos.InboxItemDto;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
+// Gets updates to the instances holding SSE connections for the user they're for. Updates are delivered to the replay
+// buffers here straight away, and sent to the direct exchange with routing key user.<username>. Each instance has its
+// own queue, bound with a user's routing key while that user has a connection open on it, so the broker hands an update
+// only to the instances that have someone to give it to and drops it if there are none. Those bindings are the presence
+// registry: nothing else has to be kept in step across instances.
+//
+// A binding is kept for a while after a user's last connection here closes, so a client reconnecting to the same
+// instance finds what it missed in the replay buffers.
+@Slf4j
 @Component
 public class EventBus {
 
+    private static final String ROUTING_KEY_PREFIX = "user.";
+
+    private final ConnectionFactory connectionFactory;
     private final RabbitTemplate rabbitTemplate;
+    private final AmqpAdmin amqpAdmin;
+    private final Queue inboxUpdatesQueue;
+    private final DirectExchange exchange;
+    private final Duration linger;
+
+    // Updates are told apart from ones sent by other instances by the name of this instance's queue:
+    private final String instanceId;
+
+    private final ReplayBuffer<ApprovalRequestDto> approvalRequestUpdates;
+    private final ReplayBuffer<InboxItemDto> inboxItemUpdates;
+
+    // Users with a connection open here, or one that closed within the linger period. Only changed through compute, so
+    // connections opening and closing at the same time agree on whether the user's binding is wanted:
+    private final Map<String, Presence> presence = new ConcurrentHashMap<>();
+
+    private static final class Presence {
 
-    private final Map<String, FluxSink<ApprovalRequestDto>> subscribers = new ConcurrentHashMap<>();
+        private int connections;
+
+        // Whether the binding is wanted. Each change to it bumps the generation, so a change finishing late can tell
+        // whether it's been overtaken:
+        private boolean bound;
+        private int generation;
+
+        // The latest binding change for the user. Each one waits for the one before it, so they reach the broker in the
+        // order they were made:
+        private CompletableFuture<Void> changes = CompletableFuture.completedFuture(null);
+
+        // Removes the binding once the linger period is up, unless another connection opens first:
+        private Disposable linger;
+    }
 
     @Autowired
-    public EventBus(RabbitTemplate rabbitTemplate) {
-        this.rabbitTemplate = rabbitTemplate;
+    public EventBus(ConnectionFactory connectionFactory, MessageConverter messageConverter, AmqpAdmin amqpAdmin,
+                    Queue inboxUpdatesQueue, ReplayBuffer<ApprovalRequestDto> approvalRequestUpdates,
+                    ReplayBuffer<InboxItemDto> inboxItemUpdates,
+                    @Value("${exchanges.direct}") String exchange,
+                    @Value("${event-bus.presence-linger-seconds:60}") long lingerSeconds) {
+        this.connectionFactory = connectionFactory;
+        this.amqpAdmin = amqpAdmin;
+        this.inboxUpdatesQueue = inboxUpdatesQueue;
+        this.exchange = new DirectExchange(exchange);
+        this.linger = Duration.ofSeconds(lingerSeconds);
+        this.instanceId = inboxUpdatesQueue.getName();
+        this.approvalRequestUpdates = approvalRequestUpdates;
+        this.inboxItemUpdates = inboxItemUpdates;
+
+        // Not the shared template: that one is mandatory, and an update for a user with no connections anywhere is
+        // meant to be dropped rather than handed back:
+        this.rabbitTemplate = new RabbitTemplate(connectionFactory);
+        this.rabbitTemplate.setMessageConverter(messageConverter);
+    }
+
+    // Bindings go with the queue when the connection drops. RabbitAdmin declares the queue again as the new connection
+    // opens, and then the bindings for users still connected here are declared again too:
+    @PostConstruct
+    private void start() {
+        connectionFactory.addConnectionListener(connection -> presence.keySet().forEach(this::rebind));
+    }
+
+    // Deliver an update to the user's connections here, and send it on for any other instance holding one. The send
+    // finishes on its own, so a slow broker only holds up other instances' connections, and a failed one is logged:
+    public void publish(String username, InboxItemDto update) {
+        deliver(username, update);
+        Mono.fromRunnable(() -> rabbitTemplate.convertAndSend(exchange.getName(), ROUTING_KEY_PREFIX + username, update, message -> {
+                    message.getMessageProperties().setAppId(instanceId);
+                    return message;
+                }))
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(null, e -> log.warn("Failed to send update for {} to other instances", username, e));
+    }
+
+    // Updates from other instances. The broker also hands back our own when the user is connected here, and those
+    // have already been delivered:
+    @RabbitListener(queues = "#{inboxUpdatesQueue.name}")
+    public void onMessage(InboxItemDto update, @Header(AmqpHeaders.RECEIVED_ROUTING_KEY) String routingKey,
+                          @Header(value = AmqpHeaders.APP_ID, required = false) String origin) {
+        if(!instanceId.equals(origin)) {
+            deliver(routingKey.substring(ROUTING_KEY_PREFIX.length()), update);
+        }
     }
 
-    public void publish(String username, ApprovalRequestDto approvalRequest) {
-        rabbitTemplate.convertAndSend("user".concat(username.toLowerCase()), approvalRequest);
+    // Replay and stream a user's approval requests, and their combined inbox, as ReplayBuffer does, with updates from
+    // other instances routed here for as long as the connection is open:
+    public Flux<ReplayBuffer.Event<ApprovalRequestDto>> approvalRequestUpdates(String username, Long lastEventId) {
+        return connected(username, Flux.defer(() -> approvalRequestUpdates.stream(username, lastEventId)));
     }
 
-    public Flux<ApprovalRequestDto> subscribe(String username) {
-        return Flux.create(sink -> {
-            subscribers.put(username.toLowerCase(), sink);
-            sink.onDispose(() -> subscribers.remove(username.toLowerCase()));
-        }, FluxSink.OverflowStrategy.LATEST);
+    public Flux<ReplayBuffer.Event<InboxItemDto>> inboxItemUpdates(String username, Long lastEventId) {
+        return connected(username, Flux.defer(() -> inboxItemUpdates.stream(username, lastEventId)));
     }
 
-    @RabbitListener(queues = "approval-request-updates-queue")
-    public  void onMessage(ApprovalRequestDto approvalRequest) {
-        FluxSink<ApprovalRequestDto> sink = subscribers.get(approvalRequest.getUsername());
-        if(sink != null) {
-            sink.next(approvalRequest);
+    private void deliver(String username, InboxItemDto update) {
+        if(update.getKind() == InboxItemDto.Kind.APPROVAL) {
+            approvalRequestUpdates.append(username, update.getApprovalRequest());
         }
+        inboxItemUpdates.append(username, update);
+    }
+
+    // Streaming starts once the user's binding is in place, so nothing sent after that is missed. If it couldn't be
+    // declared the connection still gets updates that arrive here, and the next connection to open tries again:
+    private <T> Flux<T> connected(String username, Flux<T> updates) {
+        return Mono.defer(() -> join(username))
+                .thenMany(updates)
+                .doFinally(signal -> leave(username));
+    }
+
+    private Mono<Void> join(String username) {
+        AtomicReference<CompletableFuture<Void>> bound = new AtomicReference<>();
+        presence.compute(username, (key, existing) -> {
+            Presence user = existing == null ? new Presence() : existing;
+            user.connections++;
+            if(user.linger != null) {
+                user.linger.dispose();
+                user.linger = null;
+            }
+            if(!user.bound) {
+                bind(key, user);
+            }
+            bound.set(user.changes);
+            return user;
+        });
+        return Mono.fromFuture(bound.get(), true).onErrorResume(e -> Mono.empty());
+    }
+
+    private void leave(String username) {
+        presence.computeIfPresent(username, (key, user) -> {
+            if(--user.connections == 0) {
+                user.linger = Mono.delay(linger).subscribe(tick -> expire(key));
+            }
+            return user;
+        });
+    }
+
+    // The linger period is up. If nobody has connected since, stop routing the user's updates here, and forget them once
+    // that's done:
+    private void expire(String username) {
+        presence.computeIfPresent(username, (key, user) -> {
+            if(user.connections > 0) {
+                return user;
+            }
+            if(!user.bound) {
+                return null;
+            }
+            user.bound = false;
+            user.linger = null;
+            int generation = ++user.generation;
+            user.changes = after(user.changes, () -> amqpAdmin.removeBinding(binding(key)))
+                    .doOnError(e -> log.warn("Failed to stop routing updates for {} to this instance", key, e))
+                    .onErrorResume(e -> Mono.empty())
+                    .doOnSuccess(done -> presence.computeIfPresent(key, (k, current) ->
+                            current.connections == 0 && current.generation == generation ? null : current))
+                    .toFuture();
+            return user;
+        });
+    }
+
+    private void rebind(String username) {
+        presence.computeIfPresent(username, (key, user) -> {
+            if(user.bound) {
+                bind(key, user);
+            }
+            return user;
+        });
+    }
+
+    // Called under the user's entry in presence. A failed declaration leaves the binding unwanted, so it's tried again:
+    private void bind(String username, Presence user) {
+        user.bound = true;
+        int generation = ++user.generation;
+        user.changes = after(user.changes, () -> amqpAdmin.declareBinding(binding(username)))
+                .doOnError(e -> {
+                    log.warn("Failed to route updates for {} to this instance", username, e);
+                    presence.computeIfPresent(username, (key, current) -> {
+                        if(current.generation == generation) {
+                            current.bound = false;
+                        }
+                        return current;
+                    });
+                })
+                .toFuture();
+    }
+
+    // Run a binding change once the one before it has finished, on a thread that can block on the broker:
+    private static Mono<Void> after(CompletableFuture<Void> previous, Runnable change) {
+        return Mono.fromFuture(previous, true)
+                .onErrorResume(e -> Mono.empty())
+                .then(Mono.<Void>fromRunnable(change).subscribeOn(Schedulers.boundedElastic()));
+    }
+
+    private Binding binding(String username) {
+        return BindingBuilder.bind(inboxUpdatesQueue)
+                .to(exchange)
+                .with(ROUTING_KEY_PREFIX + username);
     }
 }
@@ -0,0 +1,7 @@
+package com.skillstorm.utils;
+
+import java.util.UUID;
+
+// Primary key of a message in a user's inbox:
+public record MessageKey(String username, UUID formId) {
+}
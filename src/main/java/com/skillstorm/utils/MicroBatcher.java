@@ -0,0 +1,88 @@
+package com.skillstorm.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+// Collects items submitted from any number of threads and hands them to a flush function in batches. A batch is flushed
+// once it holds maxBatchSize items or maxDelay after its first item arrived, whichever comes first, so a lone item is never
+// held back longer than maxDelay. Each submitter gets back a Mono that completes (or fails) with the flush of the batch its
+// item went into, so callers can still acknowledge items one at a time. Once the batcher has been shut down, items
+// submitted to it fail straight away.
+@Slf4j
+public class MicroBatcher<T> {
+
+    private record Pending<T>(T item, MonoSink<Void> sink) {
+    }
+
+    // Serializes submissions from concurrent threads by queueing them, so a submitter never waits on another one that
+    // happens to be emitting:
+    private final FluxSink<Pending<T>> queue;
+
+    // Submitters share the read lock, so they only ever wait on shutdown. An item queued after the queue completes would
+    // be dropped without its submitter hearing about it:
+    private final ReadWriteLock shutdownLock = new ReentrantReadWriteLock();
+    private boolean shutdown;
+
+    public MicroBatcher(int maxBatchSize, Duration maxDelay, int maxConcurrentFlushes, Function<List<T>, Mono<Void>> flush) {
+        // The sink is handed over while subscribing, which happens here before the constructor returns:
+        AtomicReference<FluxSink<Pending<T>>> sink = new AtomicReference<>();
+        Flux.<Pending<T>>create(sink::set)
+                // Fair backpressure so a timed-out batch waits for a free flush slot instead of failing the stream:
+                .bufferTimeout(maxBatchSize, maxDelay, true)
+                .flatMap(batch -> flushBatch(batch, flush), maxConcurrentFlushes)
+                .subscribe();
+        this.queue = sink.get();
+    }
+
+    // Queue an item for the next batch. Nothing is queued until the returned Mono is subscribed to:
+    public Mono<Void> submit(T item) {
+        return Mono.create(sink -> {
+            shutdownLock.readLock().lock();
+            try {
+                if(shutdown) {
+                    sink.error(new IllegalStateException("Batcher has been shut down"));
+                } else {
+                    queue.next(new Pending<>(item, sink));
+                }
+            } finally {
+                shutdownLock.readLock().unlock();
+            }
+        });
+    }
+
+    private Mono<Void> flushBatch(List<Pending<T>> batch, Function<List<T>, Mono<Void>> flush) {
+        List<T> items = new ArrayList<>(batch.size());
+        batch.forEach(pending -> items.add(pending.item()));
+
+        return Mono.defer(() -> flush.apply(items))
+                .doOnSuccess(done -> batch.forEach(pending -> pending.sink().success()))
+                // Fail every item in the batch but keep the batcher itself running:
+                .onErrorResume(e -> {
+                    log.error("Failed to flush batch of {} items", items.size(), e);
+                    batch.forEach(pending -> pending.sink().error(e));
+                    return Mono.empty();
+                });
+    }
+
+    // Flush whatever is still queued and stop accepting items:
+    public void shutdown() {
+        shutdownLock.writeLock().lock();
+        try {
+            shutdown = true;
+            queue.complete();
+        } finally {
+            shutdownLock.writeLock().unlock();
+        }
+    }
+}
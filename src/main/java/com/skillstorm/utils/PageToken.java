@@ -0,0 +1,38 @@
+package com.skillstorm.utils;
+
+import org.springframework.data.cassandra.core.query.CassandraPageRequest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+// Opaque continuation token for paged reads. It's the Cassandra driver's paging state, base64 encoded for use in a URL, so
+// each page carries on from exactly where the last one stopped instead of skipping over earlier rows to find its offset.
+// Clients should only ever pass back a token they were given.
+public final class PageToken {
+
+    private PageToken() {
+    }
+
+    // The page of the given size following the token, or the first page if there's no token. Throws
+    // IllegalArgumentException if the token isn't valid base64:
+    public static Pageable toPageable(String token, int size) {
+        if(token == null || token.isBlank()) {
+            return CassandraPageRequest.first(size);
+        }
+        return CassandraPageRequest.of(PageRequest.of(0, size), ByteBuffer.wrap(Base64.getUrlDecoder().decode(token)));
+    }
+
+    // The token for the page after this one, or null if this is the last:
+    public static String next(Slice<?> slice) {
+        if(!slice.hasNext() || !(slice.nextPageable() instanceof CassandraPageRequest next) || next.getPagingState() == null) {
+            return null;
+        }
+        ByteBuffer pagingState = next.getPagingState().duplicate();
+        byte[] bytes = new byte[pagingState.remaining()];
+        pagingState.get(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
@@ -0,0 +1,117 @@
+package com.skillstorm.utils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Latency timers for reactive pipelines. A Mono or Flux does its work after it's subscribed to, not when the method that
+// returns it runs, so these measure from subscription until it completes, fails or is cancelled, tagged with which of
+// those it was.
+//
+// Only a sample of operations is timed, so the timers' counts are of sampled operations, not all of them. The timers for
+// each operation are created up front and kept by the caller, so an operation that isn't sampled costs a random number and
+// nothing else, and when timing is switched off pipelines are passed through untouched.
+@Component
+public class ReactiveTimers {
+
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final double sampleRate;
+    private final boolean percentileHistogram;
+
+    @Autowired
+    public ReactiveTimers(MeterRegistry meterRegistry,
+                          @Value("${instrumentation.enabled:true}") boolean enabled,
+                          @Value("${instrumentation.sample-rate:1.0}") double sampleRate,
+                          @Value("${instrumentation.percentile-histogram:false}") boolean percentileHistogram) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled && sampleRate > 0;
+        this.sampleRate = sampleRate;
+        this.percentileHistogram = percentileHistogram;
+    }
+
+    // The timers for one operation. Keep hold of it rather than creating it per call:
+    public Timing timing(String name, String... tags) {
+        return new Timing(name, Tags.of(tags));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    private boolean sampled() {
+        return sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    public final class Timing {
+
+        private final Timer success;
+        private final Timer error;
+        private final Timer cancelled;
+
+        private Timing(String name, Tags tags) {
+            this.success = timer(name, tags, "success");
+            this.error = timer(name, tags, "error");
+            this.cancelled = timer(name, tags, "cancelled");
+        }
+
+        private Timer timer(String name, Tags tags, String outcome) {
+            return Timer.builder(name)
+                    .tags(tags.and("outcome", outcome))
+                    .publishPercentileHistogram(percentileHistogram)
+                    .register(meterRegistry);
+        }
+
+        public <T> Mono<T> mono(Mono<T> mono) {
+            if(!enabled) {
+                return mono;
+            }
+            return Mono.defer(() -> {
+                if(!sampled()) {
+                    return mono;
+                }
+                long start = System.nanoTime();
+                return mono.doFinally(signal -> record(signal, start));
+            });
+        }
+
+        public <T> Flux<T> flux(Flux<T> flux) {
+            if(!enabled) {
+                return flux;
+            }
+            return Flux.defer(() -> {
+                if(!sampled()) {
+                    return flux;
+                }
+                long start = System.nanoTime();
+                return flux.doFinally(signal -> record(signal, start));
+            });
+        }
+
+        // For work that isn't reactive, or a span that didn't start with a subscription. Pass the System.nanoTime() it
+        // started at:
+        public void recordSince(long startNanos) {
+            if(enabled && sampled()) {
+                success.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private void record(SignalType signal, long startNanos) {
+            Timer timer = switch (signal) {
+                case ON_ERROR -> error;
+                case CANCEL -> cancelled;
+                default -> success;
+            };
+            timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.skillstorm.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+// Keeps each user's most recent events in a bounded ring, tagged with monotonically increasing ids, and streams new
+// events to that user's open connections. A reconnecting SSE client hands back the id of the last event it saw and is
+// sent only what it missed; if the ring no longer reaches back that far it is told to reset and reload instead.
+//
+// Each event is framed for SSE once, when it's appended, and that one frame is written to every open connection.
+//
+// Rings hold compact serialized events rather than object graphs and live in a cache bounded by total size in bytes,
+// with a per-user limit on both count and bytes and a time to live, so memory stays flat no matter how many users
+// receive events without ever connecting.
+public class ReplayBuffer<T> {
+
+    public record Event<T>(long id, T value, boolean reset, SseFrame frame) {
+
+        public static <T> Event<T> of(long id, T value, SseFrame frame) {
+            return new Event<>(id, value, false, frame);
+        }
+
+        // Tells the client events were missed that can no longer be replayed. Browsers ignore events without data, so it
+        // carries a placeholder:
+        public static <T> Event<T> reset(long id) {
+            return new Event<>(id, null, true, SseFrame.of(String.valueOf(id), "reset", "reset"));
+        }
+    }
+
+    // Rough per-entry bookkeeping cost on top of the serialized bytes, used when weighing rings:
+    private static final int ENTRY_OVERHEAD_BYTES = 48;
+    private static final int LOCK_STRIPES = 64;
+
+    // Users whose ring has gone that are still remembered. A tombstone is a username and an id, so this many stay well
+    // under the memory of the rings themselves:
+    private static final int MAX_TOMBSTONES = 100_000;
+
+    private final String eventName;
+    private final int capacity;
+    private final long maxBytesPerKey;
+    private final Function<T, byte[]> encoder;
+    private final Function<byte[], T> decoder;
+    private final SubscriberRegistry<Event<T>> live;
+
+    // Seeded from the clock so ids keep increasing across restarts. Anything at or below the seed was issued by a previous
+    // run and can't be replayed:
+    private final long firstId;
+    private final AtomicLong sequence;
+
+    // Newest id each evicted or expired ring had, by key. A client that last saw something older than its key's tombstone
+    // may have missed events we no longer have, while one that saw up to it has missed nothing:
+    private final Cache<String, Long> tombstones;
+
+    // Newest id in any tombstone that has itself been evicted. Keys with neither a ring nor a tombstone fall back on this:
+    private final AtomicLong forgottenUpTo;
+
+    private final Cache<String, Ring> rings;
+
+    // Appends for a key, and snapshots taken when a connection subscribes, are serialized on that key's stripe:
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    public ReplayBuffer(String eventName, int capacity, long maxBytesPerKey, long maxBytes, Duration timeToLive,
+                        Function<T, byte[]> encoder, Function<byte[], T> decoder, SubscriberRegistry<Event<T>> live) {
+        this.eventName = eventName;
+        this.capacity = capacity;
+        this.maxBytesPerKey = maxBytesPerKey;
+        this.encoder = encoder;
+        this.decoder = decoder;
+        this.live = live;
+        this.firstId = System.currentTimeMillis() * 1000;
+        this.sequence = new AtomicLong(firstId);
+        this.forgottenUpTo = new AtomicLong(firstId);
+        this.tombstones = Caffeine.newBuilder()
+                .maximumSize(MAX_TOMBSTONES)
+                .evictionListener((String key, Long newestId, RemovalCause cause) -> {
+                    if(newestId != null) {
+                        forgottenUpTo.accumulateAndGet(newestId, Math::max);
+                    }
+                })
+                .build();
+        // The eviction listener runs as part of removing the ring, so by the time a new ring can be created for the key
+        // its tombstone is in place:
+        this.rings = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, Ring ring) -> ring.bytes)
+                .expireAfterWrite(timeToLive)
+                .evictionListener((String key, Ring ring, RemovalCause cause) -> {
+                    if(key != null && ring != null) {
+                        tombstones.asMap().merge(key, ring.newestId, Math::max);
+                    }
+                })
+                .recordStats()
+                .build();
+        for(int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    // Record a new event for the key and push it to any open connections. The value is serialized once, and the same bytes
+    // are kept for replay and framed for the live connections:
+    public Event<T> append(String key, T value) {
+        byte[] encoded = encoder.apply(value);
+
+        synchronized (lockFor(key)) {
+            long id = sequence.incrementAndGet();
+            Event<T> event = Event.of(id, value, frame(id, encoded));
+
+            // Update through compute so the cache re-weighs the ring. A new ring carries on from the key's tombstone, so
+            // an expired ring is cleared out first to have its tombstone written:
+            ring(key);
+            rings.asMap().compute(key, (k, ring) -> {
+                Ring updated = ring == null ? new Ring(takeTombstone(k)) : ring;
+                updated.add(event.id(), encoded);
+                return updated;
+            });
+            live.publish(key, event);
+            return event;
+        }
+    }
+
+    // Replay everything after lastEventId, then stay subscribed for new events. Without a lastEventId nothing is replayed:
+    public Flux<Event<T>> stream(String key, Long lastEventId) {
+        return live.subscribe(key, lockFor(key), () -> lastEventId == null ? List.of() : eventsAfter(key, lastEventId));
+    }
+
+    private List<Event<T>> eventsAfter(String key, long lastEventId) {
+        Ring ring = ring(key);
+        long replayableAfter = ring == null ? tombstone(key) : ring.droppedUpTo;
+
+        // The client has seen something we no longer have (or never had), so anything in between is lost:
+        if(lastEventId < replayableAfter || lastEventId > sequence.get()) {
+            return List.of(Event.reset(sequence.get()));
+        }
+        return ring == null ? List.of() : ring.after(lastEventId);
+    }
+
+    // The key's ring, if it has one. A ring that has expired may still be waiting to be removed, and it's only once it has
+    // been that its tombstone is written, so that's done now rather than whenever the cache gets round to it:
+    private Ring ring(String key) {
+        Ring ring = rings.getIfPresent(key);
+        if(ring == null) {
+            rings.cleanUp();
+        }
+        return ring;
+    }
+
+    // Only events after the newest one the key's last ring had are still to come, or if even its tombstone has gone,
+    // after the newest one any forgotten ring had:
+    private long tombstone(String key) {
+        Long newestId = tombstones.getIfPresent(key);
+        return newestId == null ? forgottenUpTo.get() : newestId;
+    }
+
+    private long takeTombstone(String key) {
+        Long newestId = tombstones.asMap().remove(key);
+        return newestId == null ? forgottenUpTo.get() : newestId;
+    }
+
+    private SseFrame frame(long id, byte[] encoded) {
+        return SseFrame.of(String.valueOf(id), eventName, encoded);
+    }
+
+    private Object lockFor(String key) {
+        return locks[Math.floorMod(key.hashCode(), LOCK_STRIPES)];
+    }
+
+    public CacheStats stats() {
+        return rings.stats();
+    }
+
+    // Number of users with buffered events:
+    public long size() {
+        return rings.estimatedSize();
+    }
+
+    // Approximate bytes held across all rings:
+    public long weightedSize() {
+        return rings.policy().eviction().orElseThrow().weightedSize().orElse(0);
+    }
+
+    private record Entry(long id, byte[] data) {
+    }
+
+    // One key's events, oldest first. Guarded by the key's lock stripe, apart from the fields the eviction listener reads:
+    private final class Ring {
+
+        private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+
+        // Id of the newest event dropped from the ring. Only events after it can be replayed:
+        private long droppedUpTo;
+
+        private volatile long newestId;
+        private volatile int bytes;
+
+        private Ring(long droppedUpTo) {
+            this.droppedUpTo = droppedUpTo;
+            this.newestId = droppedUpTo;
+        }
+
+        private void add(long id, byte[] data) {
+            entries.add(new Entry(id, data));
+            newestId = id;
+            int total = bytes + data.length + ENTRY_OVERHEAD_BYTES;
+
+            // Always keep the newest entry, even if it alone is over the per-key limit:
+            while(entries.size() > 1 && (entries.size() > capacity || total > maxBytesPerKey)) {
+                Entry dropped = entries.poll();
+                droppedUpTo = dropped.id();
+                total -= dropped.data().length + ENTRY_OVERHEAD_BYTES;
+            }
+            bytes = total;
+        }
+
+        private List<Event<T>> after(long id) {
+            List<Event<T>> missed = new ArrayList<>();
+            for(Entry entry : entries) {
+                if(entry.id() > id) {
+                    missed.add(Event.of(entry.id(), decoder.apply(entry.data()), frame(entry.id(), entry.data())));
+                }
+            }
+            return missed;
+        }
+    }
+}
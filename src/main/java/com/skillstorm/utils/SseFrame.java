@@ -0,0 +1,85 @@
+package com.skillstorm.utils;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+// A complete server-sent event, already serialized to the bytes that go on the wire. An update is framed once when it's
+// published and the same frame is then written to every connection it goes out to, so the cost of serializing it doesn't
+// grow with the number of subscribers. Frames are immutable, which is what makes sharing them safe: each connection wraps
+// the bytes in its own buffer without copying them, and there's nothing to release if a frame is dropped from a queue or
+// a connection goes away before writing it.
+public final class SseFrame {
+
+    private static final byte[] ID = "id:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] EVENT = "event:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] DATA = "data:".getBytes(StandardCharsets.UTF_8);
+
+    private final byte[] bytes;
+
+    // When the frame was built, from System.nanoTime(), for measuring how long it takes to reach each connection:
+    private final long createdNanos;
+
+    private SseFrame(byte[] bytes) {
+        this.bytes = bytes;
+        this.createdNanos = System.nanoTime();
+    }
+
+    // Frame already-encoded data, typically JSON. The id and event name are optional. Data spanning several lines is split
+    // into one data field per line, as the format requires:
+    public static SseFrame of(String id, String event, byte[] data) {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(data.length + 64);
+        if(id != null) {
+            writeField(frame, ID, id.getBytes(StandardCharsets.UTF_8));
+        }
+        if(event != null) {
+            writeField(frame, EVENT, event.getBytes(StandardCharsets.UTF_8));
+        }
+
+        int lineStart = 0;
+        for(int i = 0; i < data.length; i++) {
+            if(data[i] == '\n') {
+                writeField(frame, DATA, data, lineStart, i - lineStart);
+                lineStart = i + 1;
+            }
+        }
+        writeField(frame, DATA, data, lineStart, data.length - lineStart);
+        frame.write('\n');
+        return new SseFrame(frame.toByteArray());
+    }
+
+    public static SseFrame of(String id, String event, String data) {
+        return of(id, event, data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeField(ByteArrayOutputStream frame, byte[] name, byte[] value) {
+        writeField(frame, name, value, 0, value.length);
+    }
+
+    private static void writeField(ByteArrayOutputStream frame, byte[] name, byte[] value, int offset, int length) {
+        frame.writeBytes(name);
+        frame.write(value, offset, length);
+        frame.write('\n');
+    }
+
+    public int size() {
+        return bytes.length;
+    }
+
+    public long createdNanos() {
+        return createdNanos;
+    }
+
+    // Stream frames as the body of an event-stream response, flushing each one as it's written. Every frame is handed to the
+    // server as a wrapper around its shared bytes:
+    public static Mono<Void> write(ServerHttpResponse response, Flux<SseFrame> frames) {
+        response.getHeaders().setContentType(MediaType.TEXT_EVENT_STREAM);
+        response.getHeaders().set(HttpHeaders.CONNECTION, "keep-alive");
+        return response.writeAndFlushWith(frames.map(frame -> Mono.just(response.bufferFactory().wrap(frame.bytes))));
+    }
+}
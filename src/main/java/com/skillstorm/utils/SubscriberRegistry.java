@@ -0,0 +1,201 @@
+package com.skillstorm.utils;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Index of live Flux subscribers by key (usually a username). A key can have any number of subscribers, and publishing
+// only touches the subscribers registered under that key, so the cost of a fan-out is proportional to the number of
+// interested subscribers rather than the total number of connections.
+//
+// Each subscriber gets its own bounded queue that is drained as it requests more. Publishing never blocks: when a slow
+// subscriber's queue is full the overflow policy decides what gives, and the counters record how often that happens.
+public class SubscriberRegistry<T> {
+
+    public enum OverflowPolicy {
+        // Make room by discarding the oldest queued value:
+        DROP_OLDEST,
+        // Replace a queued value with the same coalescing key, falling back to dropping the oldest:
+        COALESCE,
+        // Complete the slow subscriber's stream so it reconnects and resynchronizes:
+        DISCONNECT
+    }
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+    private final int queueCapacity;
+    private final OverflowPolicy overflowPolicy;
+    private final Function<T, ?> coalescingKey;
+
+    private final Map<String, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong disconnected = new AtomicLong();
+
+    public SubscriberRegistry() {
+        this(DEFAULT_QUEUE_CAPACITY, OverflowPolicy.DROP_OLDEST, null);
+    }
+
+    public SubscriberRegistry(int queueCapacity, OverflowPolicy overflowPolicy, Function<T, ?> coalescingKey) {
+        if(overflowPolicy == OverflowPolicy.COALESCE && coalescingKey == null) {
+            throw new IllegalArgumentException("The COALESCE overflow policy requires a coalescing key");
+        }
+        this.queueCapacity = queueCapacity;
+        this.overflowPolicy = overflowPolicy;
+        this.coalescingKey = coalescingKey;
+    }
+
+    public Flux<T> subscribe(String key) {
+        return subscribe(key, new Object(), null);
+    }
+
+    // Subscribe with a backlog that is emitted ahead of anything published afterwards. The backlog is taken and the
+    // subscriber registered while holding the given lock, so a publisher that holds the same lock while updating whatever
+    // the backlog is read from and publishing can't slip a value in between and have it missed or sent twice:
+    public Flux<T> subscribe(String key, Object lock, Supplier<? extends Collection<T>> backlog) {
+        return Flux.create(sink -> {
+            Subscriber subscriber = new Subscriber(sink);
+
+            synchronized (lock) {
+                if(backlog != null) {
+                    subscriber.queue.addAll(backlog.get());
+                }
+
+                // Register inside compute so we can't race with the last subscriber for the key removing the set:
+                subscribers.compute(key, (k, registered) -> {
+                    Set<Subscriber> set = registered == null ? ConcurrentHashMap.newKeySet() : registered;
+                    set.add(subscriber);
+                    return set;
+                });
+            }
+            sink.onRequest(n -> subscriber.drain());
+            sink.onDispose(() -> subscribers.computeIfPresent(key, (k, registered) -> {
+                registered.remove(subscriber);
+                return registered.isEmpty() ? null : registered;
+            }));
+        }, FluxSink.OverflowStrategy.IGNORE);
+    }
+
+    // Queue the value for every subscriber registered under the key. Returns how many subscribers it was queued for:
+    public int publish(String key, T value) {
+        Set<Subscriber> registered = subscribers.get(key);
+        if(registered == null) {
+            return 0;
+        }
+
+        registered.forEach(subscriber -> subscriber.offer(value));
+        return registered.size();
+    }
+
+    public boolean hasSubscribers(String key) {
+        return subscribers.containsKey(key);
+    }
+
+    // Number of keys with at least one subscriber:
+    public int size() {
+        return subscribers.size();
+    }
+
+    // Values discarded because a subscriber's queue was full:
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    // Queued values replaced by a newer value with the same coalescing key:
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    // Subscribers disconnected for falling too far behind:
+    public long getDisconnectedCount() {
+        return disconnected.get();
+    }
+
+    private final class Subscriber {
+
+        private final FluxSink<T> sink;
+
+        // Guarded by this:
+        private final ArrayDeque<T> queue = new ArrayDeque<>();
+        private boolean disconnecting;
+
+        // Work-in-progress counter so only one thread drains at a time and no wake-up is lost:
+        private final AtomicInteger wip = new AtomicInteger();
+
+        private Subscriber(FluxSink<T> sink) {
+            this.sink = sink;
+        }
+
+        private void offer(T value) {
+            synchronized (this) {
+                if(disconnecting) {
+                    return;
+                }
+                if(queue.size() >= queueCapacity && !makeRoom(value)) {
+                    disconnecting = true;
+                    disconnected.incrementAndGet();
+                    sink.complete();
+                    return;
+                }
+                queue.add(value);
+            }
+            drain();
+        }
+
+        // Apply the overflow policy to a full queue. Returns false if the subscriber should be disconnected instead:
+        private boolean makeRoom(T value) {
+            switch (overflowPolicy) {
+                case DISCONNECT:
+                    return false;
+                case COALESCE:
+                    Object key = coalescingKey.apply(value);
+                    for(Iterator<T> it = queue.iterator(); it.hasNext(); ) {
+                        if(Objects.equals(key, coalescingKey.apply(it.next()))) {
+                            it.remove();
+                            coalesced.incrementAndGet();
+                            return true;
+                        }
+                    }
+                    // Nothing to coalesce with, so fall through and drop the oldest:
+                default:
+                    queue.poll();
+                    dropped.incrementAndGet();
+                    return true;
+            }
+        }
+
+        // Emit as much of the queue as the subscriber has asked for:
+        private void drain() {
+            if(wip.getAndIncrement() != 0) {
+                return;
+            }
+
+            int missed = 1;
+            do {
+                while(sink.requestedFromDownstream() > 0 && !sink.isCancelled()) {
+                    T next;
+                    synchronized (this) {
+                        next = queue.poll();
+                    }
+                    if(next == null) {
+                        break;
+                    }
+                    sink.next(next);
+                }
+                missed = wip.addAndGet(-missed);
+            } while(missed != 0);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.skillstorm.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Hierarchical hashed timing wheel. Each level is a ring of slots; level 0 slots are one tick wide and each level above
+// is wheelSize times coarser. A timeout goes straight into the slot for its expiry, so scheduling and cancelling are O(1),
+// and timeouts too far out for one level sit in a coarser one until their slot comes around and they cascade back down.
+// A single ticker thread advances the wheel and hands expired tasks to the expiry handler.
+@Slf4j
+public class TimingWheel<T> {
+
+    private final long tickMillis;
+    private final int wheelSize;
+    private final Consumer<T> expiryHandler;
+    private final Thread ticker;
+
+    // Guards the levels, the due list and the current tick:
+    private final Object lock = new Object();
+    private final List<List<Slot>> levels = new ArrayList<>();
+    private final ArrayDeque<Timeout> due = new ArrayDeque<>();
+    private long currentTick;
+    private int size;
+
+    private volatile boolean running;
+
+    public TimingWheel(String name, Duration tick, int wheelSize, Consumer<T> expiryHandler) {
+        this.tickMillis = tick.toMillis();
+        this.wheelSize = wheelSize;
+        this.expiryHandler = expiryHandler;
+        this.currentTick = System.currentTimeMillis() / tickMillis;
+        this.levels.add(newLevel());
+        this.ticker = new Thread(this::run, name);
+        this.ticker.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        ticker.start();
+    }
+
+    public void stop() {
+        running = false;
+        ticker.interrupt();
+    }
+
+    long currentTick() {
+        synchronized (lock) {
+            return currentTick;
+        }
+    }
+
+    // Number of timeouts currently waiting to fire:
+    public int size() {
+        synchronized (lock) {
+            return size;
+        }
+    }
+
+    // Schedule a task to be handed to the expiry handler once the deadline has passed. Deadlines already in the past fire
+    // on the next tick:
+    public Timeout schedule(T task, Instant deadline) {
+        // Round up so a timeout never fires before its deadline:
+        long expiryTick = Math.floorDiv(deadline.toEpochMilli() + tickMillis - 1, tickMillis);
+        Timeout timeout = new Timeout(task, expiryTick);
+
+        synchronized (lock) {
+            place(timeout);
+            size++;
+        }
+        return timeout;
+    }
+
+    // Put a timeout in the slot for its expiry, relative to the current tick. The level is the finest one whose ring can
+    // still tell the expiry apart from now, which guarantees the slot is visited again before the timeout is due:
+    private void place(Timeout timeout) {
+        if(timeout.expiryTick <= currentTick) {
+            timeout.slot = null;
+            due.add(timeout);
+            return;
+        }
+
+        long span = 1;
+        for(int level = 0; ; level++) {
+            if(level == levels.size()) {
+                levels.add(newLevel());
+            }
+            long slotsAway = timeout.expiryTick / span - currentTick / span;
+            if(slotsAway < wheelSize) {
+                levels.get(level).get((int) ((timeout.expiryTick / span) % wheelSize)).add(timeout);
+                return;
+            }
+            span *= wheelSize;
+        }
+    }
+
+    // Move the wheel forward one tick at a time until it catches up with the clock, collecting everything that expired.
+    // Package-private so tests can drive the wheel without the ticker:
+    List<T> advanceTo(long tick) {
+        List<T> expired = new ArrayList<>();
+
+        synchronized (lock) {
+            while(currentTick < tick) {
+                currentTick++;
+
+                // Cascade coarser slots whose time has come down into finer levels. place() puts each timeout straight into
+                // the finest level that can hold it, so one falling through several levels in the same tick lands where it
+                // belongs whichever level it came from, and the levels can be visited from level 1 upward:
+                long span = 1;
+                for(int level = 1; level < levels.size(); level++) {
+                    span *= wheelSize;
+                    if(currentTick % span == 0) {
+                        Slot slot = levels.get(level).get((int) ((currentTick / span) % wheelSize));
+                        for(Timeout timeout = slot.takeAll(); timeout != null; ) {
+                            Timeout next = timeout.next;
+                            timeout.next = null;
+                            place(timeout);
+                            timeout = next;
+                        }
+                    }
+                }
+
+                // Everything in the level 0 slot for this tick is due:
+                Slot slot = levels.get(0).get((int) (currentTick % wheelSize));
+                for(Timeout timeout = slot.takeAll(); timeout != null; ) {
+                    Timeout next = timeout.next;
+                    timeout.next = null;
+                    due.add(timeout);
+                    timeout = next;
+                }
+
+                while(!due.isEmpty()) {
+                    Timeout timeout = due.poll();
+                    timeout.expired = true;
+                    size--;
+                    expired.add(timeout.task);
+                }
+            }
+        }
+        return expired;
+    }
+
+    private void run() {
+        while(running) {
+            try {
+                long now = System.currentTimeMillis();
+                long nextTickAt = (now / tickMillis + 1) * tickMillis;
+                Thread.sleep(nextTickAt - now);
+
+                // Hand expired tasks over outside the lock so a slow handler never blocks scheduling:
+                for(T task : advanceTo(System.currentTimeMillis() / tickMillis)) {
+                    try {
+                        expiryHandler.accept(task);
+                    } catch (Exception e) {
+                        log.error("Timing wheel expiry handler failed for {}", task, e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private List<Slot> newLevel() {
+        List<Slot> slots = new ArrayList<>(wheelSize);
+        for(int i = 0; i < wheelSize; i++) {
+            slots.add(new Slot());
+        }
+        return slots;
+    }
+
+    // Handle to a scheduled task that can be cancelled in constant time:
+    public final class Timeout {
+
+        private final T task;
+        private final long expiryTick;
+
+        private Slot slot;
+        private Timeout prev;
+        private Timeout next;
+        private boolean expired;
+
+        private Timeout(T task, long expiryTick) {
+            this.task = task;
+            this.expiryTick = expiryTick;
+        }
+
+        public T getTask() {
+            return task;
+        }
+
+        // Returns false if the timeout already fired or was already cancelled:
+        public boolean cancel() {
+            synchronized (lock) {
+                if(expired) {
+                    return false;
+                }
+                expired = true;
+                size--;
+                if(slot != null) {
+                    slot.remove(this);
+                } else {
+                    due.remove(this);
+                }
+                return true;
+            }
+        }
+    }
+
+    // Doubly linked list of the timeouts that hash to one slot:
+    private final class Slot {
+
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            timeout.slot = this;
+            timeout.prev = tail;
+            timeout.next = null;
+            if(tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        private void remove(Timeout timeout) {
+            if(timeout.prev == null) {
+                head = timeout.next;
+            } else {
+                timeout.prev.next = timeout.next;
+            }
+            if(timeout.next == null) {
+                tail = timeout.prev;
+            } else {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.slot = null;
+            timeout.prev = null;
+            timeout.next = null;
+        }
+
+        // Detach and return the whole list. The returned timeouts are still chained through next:
+        private Timeout takeAll() {
+            Timeout first = head;
+            for(Timeout timeout = head; timeout != null; timeout = timeout.next) {
+                timeout.slot = null;
+                timeout.prev = null;
+            }
+            head = null;
+            tail = null;
+            return first;
+        }
+    }
+}
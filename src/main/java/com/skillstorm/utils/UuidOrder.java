@@ -0,0 +1,30 @@
+package com.skillstorm.utils;
+
+import java.util.Comparator;
+import java.util.UUID;
+
+// The order Cassandra sorts uuid clustering columns in, which is the order a partition's rows come back in. UUID.compareTo
+// compares the halves as signed numbers and so disagrees with it. Cassandra orders by version first, time based uuids by
+// their timestamp, and then everything by the raw bytes:
+public final class UuidOrder {
+
+    public static final Comparator<UUID> CASSANDRA = UuidOrder::compare;
+
+    private UuidOrder() {
+    }
+
+    private static int compare(UUID a, UUID b) {
+        int c = Integer.compare(a.version(), b.version());
+        if(c != 0) {
+            return c;
+        }
+        if(a.version() == 1) {
+            c = Long.compare(a.timestamp(), b.timestamp());
+            if(c != 0) {
+                return c;
+            }
+        }
+        c = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+        return c != 0 ? c : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    }
+}
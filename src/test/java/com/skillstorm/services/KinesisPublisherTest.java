@@ -0,0 +1,182 @@
+package com.skillstorm.services;
+
+import com.skillstorm.codecs.WireFormat;
+import com.skillstorm.utils.ReactiveTimers;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequest;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsResultEntry;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Batches are flushed once full rather than on a timer, so each test knows exactly which payloads go out together.
+class KinesisPublisherTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+    private static final int MAX_ATTEMPTS = 3;
+
+    // Stands in for Kinesis, recording each PutRecords request and answering it as the test says to:
+    private static final class FakeKinesis implements KinesisAsyncClient {
+
+        private final List<PutRecordsRequest> requests = new CopyOnWriteArrayList<>();
+        private final Function<PutRecordsRequest, CompletableFuture<PutRecordsResponse>> answer;
+
+        private FakeKinesis(Function<PutRecordsRequest, CompletableFuture<PutRecordsResponse>> answer) {
+            this.answer = answer;
+        }
+
+        @Override
+        public CompletableFuture<PutRecordsResponse> putRecords(PutRecordsRequest request) {
+            requests.add(request);
+            return answer.apply(request);
+        }
+
+        @Override
+        public String serviceName() {
+            return SERVICE_NAME;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private KinesisPublisher publisher;
+
+    @AfterEach
+    void tearDown() {
+        if(publisher != null) {
+            publisher.shutdown();
+        }
+    }
+
+    private KinesisPublisher publisher(FakeKinesis kinesis, int batchSize, int maxAggregateBytes) {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        publisher = new KinesisPublisher(kinesis, meterRegistry, new ReactiveTimers(meterRegistry, false, 0, false),
+                "test-stream", batchSize, Duration.ofMinutes(1).toMillis(), 1, maxAggregateBytes, MAX_ATTEMPTS, 1,
+                WireFormat.JSON);
+        return publisher;
+    }
+
+    // Accepts every record:
+    private static CompletableFuture<PutRecordsResponse> accept(PutRecordsRequest request) {
+        return respond(request, List.of());
+    }
+
+    // Rejects the records at the given positions and accepts the rest:
+    private static CompletableFuture<PutRecordsResponse> respond(PutRecordsRequest request, List<Integer> rejected) {
+        List<PutRecordsResultEntry> results = new ArrayList<>();
+        for(int i = 0; i < request.records().size(); i++) {
+            results.add(rejected.contains(i)
+                    ? PutRecordsResultEntry.builder().errorCode("ProvisionedThroughputExceededException").build()
+                    : PutRecordsResultEntry.builder().sequenceNumber(String.valueOf(i)).shardId("shard-0").build());
+        }
+        return CompletableFuture.completedFuture(PutRecordsResponse.builder()
+                .failedRecordCount(rejected.size())
+                .records(results)
+                .build());
+    }
+
+    private static Mono<Void> publishAll(KinesisPublisher publisher, List<String> partitionKeys) {
+        List<Mono<Void>> publishes = new ArrayList<>();
+        for(int i = 0; i < partitionKeys.size(); i++) {
+            publishes.add(publisher.publish(partitionKeys.get(i), json("p" + i)));
+        }
+        // All at once, so none waits on a batch that can't fill without it:
+        return Flux.fromIterable(publishes).flatMap(publish -> publish, publishes.size()).then();
+    }
+
+    private static byte[] json(String value) {
+        return ("\"" + value + "\"").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> records(PutRecordsRequest request) {
+        return request.records().stream()
+                .map(record -> record.partitionKey() + "=" + record.data().asUtf8String())
+                .toList();
+    }
+
+    @Test
+    void aggregatesPayloadsSharingAPartitionKeyInOrder() {
+        FakeKinesis kinesis = new FakeKinesis(KinesisPublisherTest::accept);
+
+        publishAll(publisher(kinesis, 3, 51200), List.of("jane", "john", "jane")).block(TIMEOUT);
+
+        assertEquals(1, kinesis.requests.size());
+        assertEquals(List.of("jane=[\"p0\",\"p2\"]", "john=[\"p1\"]"), records(kinesis.requests.get(0)));
+    }
+
+    @Test
+    void startsANewRecordOnceAnAggregateIsFull() {
+        FakeKinesis kinesis = new FakeKinesis(KinesisPublisherTest::accept);
+
+        // Each payload is four bytes, so two fit with their framing but three don't:
+        publishAll(publisher(kinesis, 3, 12), List.of("jane", "jane", "jane")).block(TIMEOUT);
+
+        assertEquals(List.of("jane=[\"p0\",\"p1\"]", "jane=[\"p2\"]"), records(kinesis.requests.get(0)));
+    }
+
+    @Test
+    void splitsRecordsIntoRequestsOfAtMostFiveHundred() {
+        FakeKinesis kinesis = new FakeKinesis(KinesisPublisherTest::accept);
+        List<String> partitionKeys = new ArrayList<>();
+        for(int i = 0; i < 501; i++) {
+            partitionKeys.add("user-" + i);
+        }
+
+        publishAll(publisher(kinesis, 501, 51200), partitionKeys).block(TIMEOUT);
+
+        assertEquals(List.of(500, 1), kinesis.requests.stream().map(request -> request.records().size()).toList());
+    }
+
+    @Test
+    void resendsOnlyTheRejectedRecords() {
+        FakeKinesis kinesis = new FakeKinesis(request -> request.records().size() == 3
+                ? respond(request, List.of(1))
+                : accept(request));
+
+        publishAll(publisher(kinesis, 3, 51200), List.of("jane", "john", "jim")).block(TIMEOUT);
+
+        assertEquals(2, kinesis.requests.size());
+        assertEquals(List.of("john=[\"p1\"]"), records(kinesis.requests.get(1)));
+    }
+
+    @Test
+    void resendsEverythingWhenTheWholeCallFails() {
+        AtomicInteger calls = new AtomicInteger();
+        FakeKinesis kinesis = new FakeKinesis(request -> calls.incrementAndGet() == 1
+                ? CompletableFuture.failedFuture(new IllegalStateException("connection reset"))
+                : accept(request));
+
+        publishAll(publisher(kinesis, 2, 51200), List.of("jane", "john")).block(TIMEOUT);
+
+        assertEquals(2, kinesis.requests.size());
+        assertEquals(records(kinesis.requests.get(0)), records(kinesis.requests.get(1)));
+    }
+
+    @Test
+    void failsEveryPublishInTheBatchOnceAttemptsRunOut() {
+        FakeKinesis kinesis = new FakeKinesis(request -> respond(request, List.of(0)));
+
+        Mono<Void> publishes = publishAll(publisher(kinesis, 2, 51200), List.of("jane", "john"));
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> publishes.block(TIMEOUT));
+        assertTrue(e.getMessage().contains("after " + MAX_ATTEMPTS + " attempts"), e.getMessage());
+        assertEquals(MAX_ATTEMPTS, kinesis.requests.size());
+    }
+}
@@ -0,0 +1,183 @@
+package com.skillstorm.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.skillstorm.dtos.ApprovalRequestDto;
+import com.skillstorm.repositories.ApprovalRequestRepository;
+import com.skillstorm.repositories.InboxCountRepository;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Nothing is flushed on a timer here, so each test flushes when it wants the marks written.
+class ViewedWriterTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+    private static final String JANE = "jane";
+    private static final LocalDate MAY_FIRST = LocalDate.of(2030, 5, 1);
+    private static final LocalDate JUNE_FIRST = LocalDate.of(2030, 6, 1);
+
+    private final UUID first = UUID.randomUUID();
+    private final UUID second = UUID.randomUUID();
+    private final UUID third = UUID.randomUUID();
+
+    // Every batch of marks the repository was asked to write, in the order it was asked:
+    private final List<List<UUID>> written = new CopyOnWriteArrayList<>();
+
+    // How much each event date's unread count was changed by:
+    private final Map<LocalDate, Long> unreadChanges = new ConcurrentHashMap<>();
+
+    private ViewedWriter writer;
+
+    // Stands in for the repositories, answering each batch as the test says to and noting each change to the counts.
+    // Nothing else is expected to be called:
+    @SuppressWarnings("unchecked")
+    private ViewedWriter writer(int maxBatchSize, Function<List<UUID>, Mono<List<UUID>>> markViewed) {
+        ApprovalRequestRepository repository = (ApprovalRequestRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { ApprovalRequestRepository.class }, (proxy, method, args) -> {
+                    if(!method.getName().equals("markViewed")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    written.add((List<UUID>) args[1]);
+                    return markViewed.apply((List<UUID>) args[1]);
+                });
+        InboxCountRepository counts = (InboxCountRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { InboxCountRepository.class }, (proxy, method, args) -> {
+                    if(!method.getName().equals("increment")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    unreadChanges.merge((LocalDate) args[1], (Long) args[3], Long::sum);
+                    return Mono.empty();
+                });
+        InboxCounters inboxCounters = new InboxCounters(counts, repository, Caffeine.newBuilder().buildAsync(), new ObjectMapper());
+        writer = new ViewedWriter(repository, inboxCounters, Duration.ofMinutes(1).toMillis(), maxBatchSize, 1);
+        return writer;
+    }
+
+    private ViewedWriter writer(Function<List<UUID>, Mono<List<UUID>>> markViewed) {
+        return writer(100, markViewed);
+    }
+
+    private Set<UUID> allWritten() {
+        return written.stream()
+                .flatMap(List::stream)
+                .collect(Collectors.toSet());
+    }
+
+    private static ApprovalRequestDto mark(UUID formId, LocalDate eventDate) {
+        ApprovalRequestDto approvalRequest = new ApprovalRequestDto();
+        approvalRequest.setUsername(JANE);
+        approvalRequest.setFormId(formId);
+        approvalRequest.setEventDate(eventDate.toString());
+        return approvalRequest;
+    }
+
+    private static ApprovalRequestDto mark(UUID formId) {
+        return mark(formId, MAY_FIRST);
+    }
+
+    private void flush() {
+        writer.flush(JANE).block(TIMEOUT);
+    }
+
+    @Test
+    void writesEachMarkOnceHoweverOftenItWasMade() {
+        ViewedWriter writer = writer(Mono::just);
+        writer.markViewed(JANE, List.of(mark(first)));
+        writer.markViewed(JANE, List.of(mark(first), mark(second)));
+
+        flush();
+
+        assertEquals(1, written.size());
+        assertEquals(Set.of(first, second), allWritten());
+        assertEquals(Map.of(MAY_FIRST, -2L), unreadChanges);
+    }
+
+    @Test
+    void splitsAUsersMarksIntoBatches() {
+        ViewedWriter writer = writer(2, Mono::just);
+        writer.markViewed(JANE, List.of(mark(first), mark(second), mark(third)));
+
+        flush();
+
+        assertEquals(2, written.size());
+        assertEquals(Set.of(first, second, third), allWritten());
+    }
+
+    @Test
+    void dropsMarksForMessagesThatHaveGone() {
+        ViewedWriter writer = writer(formIds -> Mono.just(formIds.stream().filter(second::equals).toList()));
+        writer.markViewed(JANE, List.of(mark(first), mark(second)));
+
+        flush();
+        flush();
+
+        assertEquals(1, written.size());
+    }
+
+    @Test
+    void takesOnlyTheMarksItChangedOffTheUnreadCount() {
+        ViewedWriter writer = writer(formIds -> Mono.just(formIds.stream().filter(second::equals).toList()));
+        writer.markViewed(JANE, List.of(mark(first, MAY_FIRST), mark(second, JUNE_FIRST)));
+
+        flush();
+
+        assertEquals(Map.of(JUNE_FIRST, -1L), unreadChanges);
+    }
+
+    @Test
+    void retriesABatchWhoseWriteFailed() {
+        AtomicBoolean failed = new AtomicBoolean();
+        ViewedWriter writer = writer(formIds -> failed.compareAndSet(false, true)
+                ? Mono.error(new IllegalStateException("write timed out"))
+                : Mono.just(formIds));
+        writer.markViewed(JANE, List.of(mark(first), mark(second)));
+
+        flush();
+        written.clear();
+        flush();
+
+        assertEquals(Set.of(first, second), allWritten());
+        assertEquals(Map.of(MAY_FIRST, -2L), unreadChanges);
+    }
+
+    @Test
+    void forgetsACancelledMarkThatHasNotBeenWritten() {
+        ViewedWriter writer = writer(Mono::just);
+        writer.markViewed(JANE, List.of(mark(first), mark(second)));
+
+        writer.cancel(JANE, first);
+        flush();
+
+        assertEquals(Set.of(second), allWritten());
+    }
+
+    @Test
+    void doesNotRetryAMarkCancelledWhileItWasBeingWritten() {
+        ViewedWriter writer = writer(formIds -> Mono.defer(() -> {
+            this.writer.cancel(JANE, first);
+            return Mono.error(new IllegalStateException("write timed out"));
+        }));
+        writer.markViewed(JANE, List.of(mark(first), mark(second)));
+
+        flush();
+        written.clear();
+        flush();
+
+        assertEquals(Set.of(second), allWritten());
+    }
+}
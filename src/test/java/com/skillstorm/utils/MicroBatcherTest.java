@@ -0,0 +1,109 @@
+package com.skillstorm.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MicroBatcherTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    // Every batch handed to the flush function, in the order they were flushed:
+    private final List<List<Integer>> flushed = new CopyOnWriteArrayList<>();
+
+    private MicroBatcher<Integer> batcher;
+
+    @AfterEach
+    void tearDown() {
+        if(batcher != null) {
+            batcher.shutdown();
+        }
+    }
+
+    private MicroBatcher<Integer> batcher(int maxBatchSize, Duration maxDelay, Function<List<Integer>, Mono<Void>> flush) {
+        batcher = new MicroBatcher<>(maxBatchSize, maxDelay, 1, batch -> {
+            flushed.add(batch);
+            return flush.apply(batch);
+        });
+        return batcher;
+    }
+
+    private static void submitAll(MicroBatcher<Integer> batcher, List<Integer> items) {
+        Flux.fromIterable(items)
+                .flatMap(batcher::submit)
+                .then()
+                .block(TIMEOUT);
+    }
+
+    @Test
+    void flushesAsSoonAsABatchIsFull() {
+        // Long enough that only a full batch could have been flushed in time:
+        MicroBatcher<Integer> batcher = batcher(3, Duration.ofMinutes(1), batch -> Mono.empty());
+
+        submitAll(batcher, List.of(1, 2, 3, 4, 5, 6));
+
+        assertEquals(List.of(List.of(1, 2, 3), List.of(4, 5, 6)), flushed);
+    }
+
+    @Test
+    void flushesAPartBatchOnceItsDelayIsUp() {
+        MicroBatcher<Integer> batcher = batcher(100, Duration.ofMillis(20), batch -> Mono.empty());
+
+        submitAll(batcher, List.of(1, 2));
+
+        assertEquals(List.of(List.of(1, 2)), flushed);
+    }
+
+    @Test
+    void failsEveryItemInAFailedBatchAndKeepsGoing() {
+        MicroBatcher<Integer> batcher = batcher(2, Duration.ofMinutes(1), batch -> batch.contains(1)
+                ? Mono.error(new IllegalStateException("write failed"))
+                : Mono.empty());
+
+        Mono<Void> first = batcher.submit(1);
+        Mono<Void> second = batcher.submit(2);
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        Flux.merge(first.onErrorResume(e -> Mono.fromRunnable(() -> errors.add(e))),
+                        second.onErrorResume(e -> Mono.fromRunnable(() -> errors.add(e))))
+                .then()
+                .block(TIMEOUT);
+
+        assertEquals(2, errors.size());
+        errors.forEach(e -> assertEquals("write failed", e.getMessage()));
+
+        submitAll(batcher, List.of(3, 4));
+        assertEquals(List.of(List.of(1, 2), List.of(3, 4)), flushed);
+    }
+
+    @Test
+    void flushesWhatIsQueuedOnShutdown() {
+        MicroBatcher<Integer> batcher = batcher(100, Duration.ofMinutes(1), batch -> Mono.empty());
+        List<Integer> completed = new CopyOnWriteArrayList<>();
+        batcher.submit(1).subscribe(null, null, () -> completed.add(1));
+        batcher.submit(2).subscribe(null, null, () -> completed.add(2));
+
+        batcher.shutdown();
+
+        assertEquals(List.of(List.of(1, 2)), flushed);
+        assertEquals(List.of(1, 2), completed);
+    }
+
+    @Test
+    void rejectsItemsSubmittedAfterShutdown() {
+        MicroBatcher<Integer> batcher = batcher(100, Duration.ofMillis(20), batch -> Mono.empty());
+        batcher.shutdown();
+
+        Mono<Void> late = batcher.submit(1).timeout(TIMEOUT);
+
+        assertThrows(IllegalStateException.class, () -> late.block(TIMEOUT));
+        assertTrue(flushed.isEmpty());
+    }
+}
@@ -0,0 +1,70 @@
+package com.skillstorm.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.cassandra.core.query.CassandraPageRequest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageTokenTest {
+
+    // Bytes that base64 encode to the characters a plain encoder would use but aren't safe in a URL:
+    private static final byte[] PAGING_STATE = {(byte) 0xfb, (byte) 0xff, (byte) 0xbf, 0x01, 0x02};
+
+    // A page as the repositories return it, with the paging state for the next one if there is one:
+    private static SliceImpl<String> page(byte[] pagingState) {
+        Pageable pageable = pagingState == null
+                ? CassandraPageRequest.first(2)
+                : CassandraPageRequest.of(PageRequest.of(0, 2), ByteBuffer.wrap(pagingState));
+        return new SliceImpl<>(List.of("a", "b"), pageable, pagingState != null);
+    }
+
+    private static byte[] pagingState(Pageable pageable) {
+        ByteBuffer pagingState = ((CassandraPageRequest) pageable).getPagingState().duplicate();
+        byte[] bytes = new byte[pagingState.remaining()];
+        pagingState.get(bytes);
+        return bytes;
+    }
+
+    @Test
+    void startsFromTheFirstPageWithoutAToken() {
+        for(String token : new String[] {null, "", "  "}) {
+            CassandraPageRequest first = (CassandraPageRequest) PageToken.toPageable(token, 25);
+
+            assertNull(first.getPagingState());
+            assertEquals(25, first.getPageSize());
+        }
+    }
+
+    @Test
+    void carriesOnFromThePagingStateInTheToken() {
+        String token = PageToken.next(page(PAGING_STATE));
+
+        Pageable next = PageToken.toPageable(token, 10);
+
+        assertArrayEquals(PAGING_STATE, pagingState(next));
+        assertEquals(10, next.getPageSize());
+    }
+
+    @Test
+    void tokensAreSafeInAUrl() {
+        String token = PageToken.next(page(PAGING_STATE));
+
+        assertTrue(token.matches("[A-Za-z0-9_-]+"), token);
+    }
+
+    @Test
+    void hasNoTokenAfterTheLastPage() {
+        assertNull(PageToken.next(page(null)));
+    }
+
+    @Test
+    void rejectsATokenThatIsNotBase64() {
+        assertThrows(IllegalArgumentException.class, () -> PageToken.toPageable("not a token!", 10));
+    }
+}
@@ -0,0 +1,148 @@
+package com.skillstorm.utils;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplayBufferTest {
+
+    private static final String JANE = "jane";
+    private static final String JOHN = "john";
+
+    private static ReplayBuffer<String> buffer(int capacity, long maxBytesPerKey, long maxBytes, Duration timeToLive) {
+        return new ReplayBuffer<>("test", capacity, maxBytesPerKey, maxBytes, timeToLive,
+                value -> value.getBytes(StandardCharsets.UTF_8),
+                bytes -> new String(bytes, StandardCharsets.UTF_8),
+                new SubscriberRegistry<>());
+    }
+
+    private static ReplayBuffer<String> buffer(int capacity) {
+        return buffer(capacity, 65536, 67108864, Duration.ofMinutes(30));
+    }
+
+    // What a connection opened with the given Last-Event-ID is sent straight away:
+    private static List<ReplayBuffer.Event<String>> replay(ReplayBuffer<String> buffer, String key, Long lastEventId) {
+        List<ReplayBuffer.Event<String>> events = new ArrayList<>();
+        buffer.stream(key, lastEventId).subscribe(events::add).dispose();
+        return events;
+    }
+
+    private static List<String> values(List<ReplayBuffer.Event<String>> events) {
+        return events.stream().map(ReplayBuffer.Event::value).toList();
+    }
+
+    private static boolean isReset(List<ReplayBuffer.Event<String>> events) {
+        return events.size() == 1 && events.get(0).reset();
+    }
+
+    @Test
+    void replaysEverythingAfterTheLastEventId() {
+        ReplayBuffer<String> buffer = buffer(8);
+        long first = buffer.append(JANE, "a").id();
+        buffer.append(JANE, "b");
+        buffer.append(JANE, "c");
+
+        assertEquals(List.of("b", "c"), values(replay(buffer, JANE, first)));
+    }
+
+    @Test
+    void replaysNothingWithoutALastEventId() {
+        ReplayBuffer<String> buffer = buffer(8);
+        buffer.append(JANE, "a");
+
+        assertTrue(replay(buffer, JANE, null).isEmpty());
+    }
+
+    @Test
+    void streamsNewEventsAfterTheReplay() {
+        ReplayBuffer<String> buffer = buffer(8);
+        long first = buffer.append(JANE, "a").id();
+        buffer.append(JANE, "b");
+
+        List<ReplayBuffer.Event<String>> events = new ArrayList<>();
+        Disposable connection = buffer.stream(JANE, first).subscribe(events::add);
+        buffer.append(JANE, "c");
+        buffer.append(JOHN, "d");
+        connection.dispose();
+
+        assertEquals(List.of("b", "c"), values(events));
+    }
+
+    @Test
+    void resetsOnceTheRingNoLongerReachesBack() {
+        ReplayBuffer<String> buffer = buffer(2);
+        long first = buffer.append(JANE, "a").id();
+        long second = buffer.append(JANE, "b").id();
+        buffer.append(JANE, "c");
+        buffer.append(JANE, "d");
+
+        assertTrue(isReset(replay(buffer, JANE, first)));
+        assertEquals(List.of("c", "d"), values(replay(buffer, JANE, second)));
+    }
+
+    @Test
+    void dropsOldEventsOverThePerKeyByteLimit() {
+        // Room for one one-byte event and its overhead, but not two:
+        ReplayBuffer<String> buffer = buffer(8, 60, 67108864, Duration.ofMinutes(30));
+        long first = buffer.append(JANE, "a").id();
+        long second = buffer.append(JANE, "b").id();
+        buffer.append(JANE, "c");
+
+        assertTrue(isReset(replay(buffer, JANE, first)));
+        assertEquals(List.of("c"), values(replay(buffer, JANE, second)));
+    }
+
+    @Test
+    void resetsForIdsItNeverIssued() {
+        ReplayBuffer<String> buffer = buffer(8);
+        long latest = buffer.append(JANE, "a").id();
+
+        assertTrue(isReset(replay(buffer, JANE, latest + 1)));
+        assertTrue(isReset(replay(buffer, JANE, 1L)));
+    }
+
+    @Test
+    void doesNotResetAnIdleUserWhoseRingExpired() throws InterruptedException {
+        ReplayBuffer<String> buffer = buffer(8, 65536, 67108864, Duration.ofMillis(50));
+        long first = buffer.append(JANE, "a").id();
+        long latest = buffer.append(JANE, "b").id();
+
+        Thread.sleep(150);
+
+        // Having seen everything the ring held, nothing was missed:
+        assertTrue(replay(buffer, JANE, latest).isEmpty());
+        // Having missed some of it, it can't be replayed any more:
+        assertTrue(isReset(replay(buffer, JANE, first)));
+    }
+
+    @Test
+    void carriesOnFromTheTombstoneWhenARingIsStartedAgain() throws InterruptedException {
+        ReplayBuffer<String> buffer = buffer(8, 65536, 67108864, Duration.ofMillis(50));
+        long first = buffer.append(JANE, "a").id();
+        long latest = buffer.append(JANE, "b").id();
+
+        Thread.sleep(150);
+        buffer.append(JANE, "c");
+
+        assertEquals(List.of("c"), values(replay(buffer, JANE, latest)));
+        assertTrue(isReset(replay(buffer, JANE, first)));
+    }
+
+    @Test
+    void evictingOneUsersRingDoesNotResetAnother() {
+        // Room for roughly one ring at a time, so each new user's ring pushes the last one out:
+        ReplayBuffer<String> buffer = buffer(8, 65536, 60, Duration.ofMinutes(30));
+        long jane = buffer.append(JANE, "a").id();
+        long john = buffer.append(JOHN, "b").id();
+        buffer.append("someone-else", "c");
+
+        assertTrue(replay(buffer, JANE, jane).isEmpty());
+        assertTrue(replay(buffer, JOHN, john).isEmpty());
+    }
+}
@@ -0,0 +1,139 @@
+package com.skillstorm.utils;
+
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SubscriberRegistryTest {
+
+    // Stands in for a connection, asking for only as many values as it's told to:
+    private static final class Connection extends BaseSubscriber<Integer> {
+
+        private final List<Integer> received = new ArrayList<>();
+        private final long initialRequest;
+        private boolean completed;
+
+        private Connection(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            if(initialRequest > 0) {
+                request(initialRequest);
+            }
+        }
+
+        @Override
+        protected void hookOnNext(Integer value) {
+            received.add(value);
+        }
+
+        @Override
+        protected void hookOnComplete() {
+            completed = true;
+        }
+    }
+
+    private static Connection connect(SubscriberRegistry<Integer> registry, String key, long initialRequest) {
+        Connection connection = new Connection(initialRequest);
+        registry.subscribe(key).subscribe(connection);
+        return connection;
+    }
+
+    @Test
+    void publishesOnlyToSubscribersOfTheKey() {
+        SubscriberRegistry<Integer> registry = new SubscriberRegistry<>();
+        Connection first = connect(registry, "jane", Long.MAX_VALUE);
+        Connection second = connect(registry, "jane", Long.MAX_VALUE);
+        Connection other = connect(registry, "john", Long.MAX_VALUE);
+
+        assertEquals(2, registry.publish("jane", 1));
+        assertEquals(0, registry.publish("nobody", 2));
+
+        assertEquals(List.of(1), first.received);
+        assertEquals(List.of(1), second.received);
+        assertTrue(other.received.isEmpty());
+    }
+
+    @Test
+    void dropsTheOldestValueWhenASubscriberFallsBehind() {
+        SubscriberRegistry<Integer> registry = new SubscriberRegistry<>(2, SubscriberRegistry.OverflowPolicy.DROP_OLDEST, null);
+        Connection connection = connect(registry, "jane", 0);
+
+        registry.publish("jane", 1);
+        registry.publish("jane", 2);
+        registry.publish("jane", 3);
+        connection.request(10);
+
+        assertEquals(List.of(2, 3), connection.received);
+        assertEquals(1, registry.getDroppedCount());
+    }
+
+    @Test
+    void coalescesWithAQueuedValueForTheSameKeyBeforeDropping() {
+        // Values coalesce by their tens digit:
+        SubscriberRegistry<Integer> registry = new SubscriberRegistry<>(2, SubscriberRegistry.OverflowPolicy.COALESCE, value -> value / 10);
+        Connection connection = connect(registry, "jane", 0);
+
+        registry.publish("jane", 11);
+        registry.publish("jane", 21);
+        registry.publish("jane", 12);
+        registry.publish("jane", 33);
+        connection.request(10);
+
+        assertEquals(List.of(12, 33), connection.received);
+        assertEquals(1, registry.getCoalescedCount());
+        assertEquals(1, registry.getDroppedCount());
+    }
+
+    @Test
+    void disconnectsASubscriberThatFallsBehind() {
+        SubscriberRegistry<Integer> registry = new SubscriberRegistry<>(1, SubscriberRegistry.OverflowPolicy.DISCONNECT, null);
+        Connection connection = connect(registry, "jane", 0);
+
+        registry.publish("jane", 1);
+        registry.publish("jane", 2);
+
+        assertTrue(connection.completed);
+        assertEquals(1, registry.getDisconnectedCount());
+        assertFalse(registry.hasSubscribers("jane"));
+    }
+
+    @Test
+    void emitsTheBacklogAheadOfLaterValues() {
+        SubscriberRegistry<Integer> registry = new SubscriberRegistry<>();
+        Object lock = new Object();
+        Connection connection = new Connection(Long.MAX_VALUE);
+        registry.subscribe("jane", lock, () -> List.of(1, 2)).subscribe(connection);
+
+        registry.publish("jane", 3);
+
+        assertEquals(List.of(1, 2, 3), connection.received);
+    }
+
+    @Test
+    void forgetsAKeyOnceItsLastSubscriberGoes() {
+        SubscriberRegistry<Integer> registry = new SubscriberRegistry<>();
+        Connection first = connect(registry, "jane", Long.MAX_VALUE);
+        Connection second = connect(registry, "jane", Long.MAX_VALUE);
+
+        first.dispose();
+        assertTrue(registry.hasSubscribers("jane"));
+        second.dispose();
+
+        assertFalse(registry.hasSubscribers("jane"));
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    void requiresACoalescingKeyToCoalesce() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new SubscriberRegistry<Integer>(2, SubscriberRegistry.OverflowPolicy.COALESCE, null));
+    }
+}
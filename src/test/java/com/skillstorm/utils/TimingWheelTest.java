@@ -0,0 +1,108 @@
+package com.skillstorm.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// The wheel is driven tick by tick through advanceTo rather than by its ticker, so every expiry can be checked against
+// the exact tick it should fire on. A wheel size of 4 puts anything more than a few ticks out on a coarser level, so
+// most of these go through one or more cascades first.
+class TimingWheelTest {
+
+    private static final Duration TICK = Duration.ofMillis(10);
+
+    private TimingWheel<String> wheel;
+    private long start;
+
+    // The tick each task was handed back on:
+    private final Map<String, Long> firedAt = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        wheel = new TimingWheel<>("test-wheel", TICK, 4, task -> { });
+        start = wheel.currentTick();
+    }
+
+    @Test
+    void firesEachTimeoutOnItsExpiryTick() {
+        List<Long> offsets = List.of(1L, 3L, 4L, 5L, 15L, 16L, 17L, 63L, 64L, 65L, 255L, 256L, 1000L);
+        offsets.forEach(offset -> wheel.schedule("task-" + offset, atTick(start + offset)));
+        assertEquals(offsets.size(), wheel.size());
+
+        advanceBy(1001);
+
+        offsets.forEach(offset -> assertEquals(start + offset, firedAt.get("task-" + offset), "task-" + offset));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void roundsDeadlinesUpToTheNextTick() {
+        wheel.schedule("task", atTick(start + 2).plusMillis(1));
+
+        advanceBy(5);
+
+        assertEquals(start + 3, firedAt.get("task"));
+    }
+
+    @Test
+    void firesPastDeadlinesOnTheNextTick() {
+        wheel.schedule("task", atTick(start - 100));
+
+        advanceBy(1);
+
+        assertEquals(start + 1, firedAt.get("task"));
+    }
+
+    @Test
+    void cancelledTimeoutsNeverFire() {
+        TimingWheel<String>.Timeout cancelled = wheel.schedule("cancelled", atTick(start + 100));
+        wheel.schedule("kept", atTick(start + 100));
+
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+        advanceBy(200);
+
+        assertEquals(Set.of("kept"), firedAt.keySet());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cannotCancelATimeoutThatHasFired() {
+        TimingWheel<String>.Timeout timeout = wheel.schedule("task", atTick(start + 1));
+
+        advanceBy(1);
+
+        assertFalse(timeout.cancel());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cancelsTimeoutsAlreadyDue() {
+        TimingWheel<String>.Timeout timeout = wheel.schedule("task", atTick(start - 1));
+
+        assertTrue(timeout.cancel());
+        advanceBy(1);
+
+        assertTrue(firedAt.isEmpty());
+    }
+
+    private Instant atTick(long tick) {
+        return Instant.ofEpochMilli(tick * TICK.toMillis());
+    }
+
+    private void advanceBy(long ticks) {
+        long target = wheel.currentTick() + ticks;
+        while(wheel.currentTick() < target) {
+            long tick = wheel.currentTick() + 1;
+            wheel.advanceTo(tick).forEach(task -> firedAt.put(task, tick));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.skillstorm.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UuidOrderTest {
+
+    // A version 1 uuid with the given 60 bit timestamp. The low bits of the timestamp come first in the uuid, so uuids
+    // like these don't sort by time as plain numbers:
+    private static UUID timeUuid(long timestamp, long leastSignificantBits) {
+        long mostSignificantBits = (timestamp & 0xFFFFFFFFL) << 32
+                | ((timestamp >>> 32) & 0xFFFFL) << 16
+                | 0x1000L
+                | (timestamp >>> 48) & 0x0FFFL;
+        return new UUID(mostSignificantBits, leastSignificantBits);
+    }
+
+    private static UUID randomUuid(long mostSignificantBits, long leastSignificantBits) {
+        return new UUID(mostSignificantBits & ~0xF000L | 0x4000L, leastSignificantBits);
+    }
+
+    private static List<UUID> sorted(UUID... uuids) {
+        List<UUID> list = new ArrayList<>(List.of(uuids));
+        list.sort(UuidOrder.CASSANDRA);
+        return list;
+    }
+
+    @Test
+    void ordersTimeBasedUuidsByTimestamp() {
+        // The earlier one has the larger low bits, so it's the greater number:
+        UUID earlier = timeUuid(0x0000_0001_7FFF_FFFFL, 0);
+        UUID later = timeUuid(0x0000_0002_0000_0000L, 0);
+        assertTrue(earlier.compareTo(later) > 0);
+
+        assertEquals(List.of(earlier, later), sorted(later, earlier));
+    }
+
+    @Test
+    void ordersByVersionFirst() {
+        UUID timeBased = timeUuid(Long.MAX_VALUE >>> 4, -1);
+        UUID random = randomUuid(0, 0);
+
+        assertEquals(List.of(timeBased, random), sorted(random, timeBased));
+    }
+
+    @Test
+    void comparesTheRawBytesAsUnsigned() {
+        // UUID.compareTo reads the top bit as a sign and puts this one first:
+        UUID highBit = randomUuid(0x8000_0000_0000_0000L, 0);
+        UUID low = randomUuid(0x1000_0000_0000_0000L, 0);
+        assertTrue(highBit.compareTo(low) < 0);
+
+        assertEquals(List.of(low, highBit), sorted(highBit, low));
+    }
+
+    @Test
+    void breaksTiesOnTheLeastSignificantBitsAsUnsigned() {
+        UUID first = timeUuid(42, 0x7FFF_FFFF_FFFF_FFFFL);
+        UUID second = timeUuid(42, 0x8000_0000_0000_0000L);
+
+        assertEquals(List.of(first, second), sorted(second, first));
+        assertEquals(0, UuidOrder.CASSANDRA.compare(first, timeUuid(42, 0x7FFF_FFFF_FFFF_FFFFL)));
+    }
+}